@@ -0,0 +1,100 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks and stores results in the JSON format of JMH, so runs 
+ * for different ASM versions and JDKs may be compared with any JMH result 
+ * viewer. Accepts the usual JMH command line options, without benchmark 
+ * patterns all benchmarks of this module are run:
+ * <pre>
+ * java -cp target/benchmarks.jar net.tascalate.asmx.benchmarks.BenchmarkSuite [JMH options]
+ * </pre>
+ * The result file is <code>asmx-&lt;ASM version&gt;-java&lt;JDK version&gt;-&lt;timestamp&gt;.json</code>
+ * in the directory specified by the <code>benchmarks.results</code> system 
+ * property, <code>benchmark-results</code> by default.
+ */
+public class BenchmarkSuite {
+    
+    public static void main(String[] args) throws IOException, RunnerException {
+        CommandLineOptions commandLine;
+        try {
+            commandLine = new CommandLineOptions(args);
+        } catch (CommandLineOptionException ex) {
+            System.err.println("Error parsing command line: " + ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        Properties versions = new Properties();
+        InputStream in = BenchmarkSuite.class.getResourceAsStream("benchmarks.properties");
+        try {
+            versions.load(in);
+        } finally {
+            in.close();
+        }
+        
+        File directory = new File(System.getProperty("benchmarks.results", "benchmark-results"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        File result = new File(directory, 
+                               "asmx-" + versions.getProperty("asm.version") + 
+                               "-java" + System.getProperty("java.specification.version") + 
+                               "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(BenchmarkSuite.class.getPackage().getName() + "\\..*");
+        }
+        Options options = builder.resultFormat(ResultFormatType.JSON)
+                                 .result(result.getPath())
+                                 .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+final class BenchmarkTypes {
+    private BenchmarkTypes() {}
+    
+    // Typical mix of types seen by COMPUTE_FRAMES in collection-heavy code
+    static final String[] JDK_TYPES = {
+        "java/util/ArrayList",
+        "java/util/LinkedList",
+        "java/util/HashSet",
+        "java/util/LinkedHashSet",
+        "java/util/TreeSet",
+        "java/util/HashMap",
+        "java/util/LinkedHashMap",
+        "java/util/TreeMap",
+        "java/util/ArrayDeque",
+        "java/util/PriorityQueue",
+        "java/util/Vector",
+        "java/util/Stack",
+        "java/util/concurrent/ConcurrentHashMap",
+        "java/util/concurrent/ConcurrentLinkedQueue",
+        "java/util/concurrent/CopyOnWriteArrayList",
+        "java/util/concurrent/LinkedBlockingQueue",
+        "java/util/List",
+        "java/util/Set",
+        "java/util/Map",
+        "java/util/Queue",
+        "java/util/Deque",
+        "java/util/Collection",
+        "java/lang/Iterable",
+        "java/lang/String",
+        "java/lang/StringBuilder",
+        "java/lang/Integer",
+        "java/lang/Long",
+        "java/lang/Double",
+        "java/lang/Number",
+        "java/lang/IllegalArgumentException",
+        "java/lang/IllegalStateException",
+        "java/io/IOException",
+        "java/io/FileNotFoundException",
+        "java/io/ByteArrayInputStream",
+        "java/io/BufferedInputStream",
+        "java/io/FileInputStream",
+        "java/io/InputStream",
+        "java/io/Reader",
+        "java/io/StringReader",
+        "java/io/BufferedReader"
+    };
+    
+    static String[][] allPairs(String[] types) {
+        int size = types.length;
+        String[][] result = new String[size * size][];
+        int idx = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result[idx++] = new String[] {types[i], types[j]};
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.MethodVisitor;
+import net.tascalate.asmx.Opcodes;
+import net.tascalate.asmx.plus.ClassHeader;
+
+/**
+ * Compares the header-only {@link ClassHeader} parser with the full 
+ * {@link ClassReader} on real class files: the <code>jdk</code> corpus
+ * is <code>java.base/java/util</code> of the running JDK, the 
+ * <code>thirdparty</code> corpus is the JMH core library, the <code>generated</code>
+ * corpus is a set of large synthetic classes with a lot of code but a small 
+ * constant pool. 
+ * <p>
+ * Run with <code>-prof gc</code> to compare the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassHeaderBenchmark {
+    
+    @Param({"jdk", "thirdparty", "generated"})
+    public String corpus;
+    
+    byte[][] classes;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<byte[]> result;
+        if ("jdk".equals(corpus)) {
+            result = jdkClasses();
+        } else if ("thirdparty".equals(corpus)) {
+            result = thirdPartyClasses();
+        } else {
+            result = generatedClasses();
+        }
+        classes = result.toArray(new byte[result.size()][]);
+    }
+    
+    @Benchmark
+    public void classReader(Blackhole bh) throws IOException {
+        for (byte[] bytes : classes) {
+            ClassReader reader = new ClassReader(new ByteArrayInputStream(bytes));
+            bh.consume(reader.getAccess());
+            bh.consume(reader.getClassName());
+            bh.consume(reader.getSuperName());
+            bh.consume(reader.getInterfaces());
+        }
+    }
+    
+    @Benchmark
+    public void classHeader(Blackhole bh) throws IOException {
+        for (byte[] bytes : classes) {
+            ClassHeader header = ClassHeader.read(new ByteArrayInputStream(bytes));
+            bh.consume(header.getAccess());
+            bh.consume(header.getClassName());
+            bh.consume(header.getSuperName());
+            bh.consume(header.getInterfaces());
+        }
+    }
+    
+    static List<byte[]> jdkClasses() throws IOException {
+        List<byte[]> result = new ArrayList<byte[]>();
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        DirectoryStream<Path> files = Files.newDirectoryStream(jrt.getPath("/modules/java.base/java/util"), "*.class");
+        try {
+            for (Path file : files) {
+                result.add(Files.readAllBytes(file));
+            }
+        } finally {
+            files.close();
+        }
+        return result;
+    }
+    
+    static List<byte[]> thirdPartyClasses() throws IOException {
+        List<byte[]> result = new ArrayList<byte[]>();
+        String jar = Runner.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("org/openjdk/jmh/") && entry.getName().endsWith(".class")) {
+                    result.add(readFully(zip.getInputStream(entry)));
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return result;
+    }
+    
+    static List<byte[]> generatedClasses() {
+        List<byte[]> result = new ArrayList<byte[]>();
+        for (int i = 0; i < 32; i++) {
+            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, 
+                     "generated/Class" + i, null, 
+                     "java/lang/Object", new String[] {"java/io/Serializable"});
+            for (int j = 0; j < 200; j++) {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m" + j, "(I)I", null, null);
+                mv.visitCode();
+                mv.visitVarInsn(Opcodes.ILOAD, 0);
+                for (int k = 0; k < 100; k++) {
+                    mv.visitIntInsn(Opcodes.SIPUSH, k);
+                    mv.visitInsn(Opcodes.IXOR);
+                }
+                mv.visitInsn(Opcodes.IRETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+            cw.visitEnd();
+            result.add(cw.toByteArray());
+        }
+        return result;
+    }
+    
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.tascalate.asmx.plus.ClassHierarchy;
+
+/**
+ * Measures how throughput of {@link ClassHierarchy#getCommonSuperClass(String, String)}
+ * scales with the number of concurrent callers. 
+ * <p>
+ * Warm lookups are measured as throughput over a hierarchy with all pairs 
+ * cached. Cold lookups are measured as the time of a batch of 
+ * {@value #COLD_BATCH} lookups per thread, every batch starts with a new 
+ * hierarchy, so every measured call runs over empty caches.
+ * <p>
+ * Run {@link #main(String[])} to get a throughput table for 1..2*CPU threads;
+ * the JMH runner (<code>java -jar target/benchmarks.jar</code>) may be used 
+ * with the <code>-t</code> option as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentLookupBenchmark {
+    // Every pair of BenchmarkTypes.JDK_TYPES once
+    static final int COLD_BATCH = 1600;
+    
+    @State(Scope.Benchmark)
+    public static class Warm {
+        ClassHierarchy hierarchy;
+        String[][] pairs;
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            hierarchy = new ClassHierarchy(new ClassLoaderResourceLoader(ClassLoader.getSystemClassLoader()));
+            pairs = BenchmarkTypes.allPairs(BenchmarkTypes.JDK_TYPES);
+            for (String[] pair : pairs) {
+                hierarchy.getCommonSuperClass(pair[0], pair[1]);
+            }
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Cold {
+        ClassHierarchy hierarchy;
+        String[][] pairs;
+        
+        @Setup(Level.Iteration)
+        public void setup() {
+            // An iteration is a single batch, so the batch 
+            // starts with empty caches
+            hierarchy = new ClassHierarchy(new ClassLoaderResourceLoader(ClassLoader.getSystemClassLoader()));
+            pairs = BenchmarkTypes.allPairs(BenchmarkTypes.JDK_TYPES);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            // Spread threads across the pairs
+            position = (int)(Thread.currentThread().getId() * 31);
+        }
+        
+        String[] next(String[][] pairs) {
+            int idx = (position++ & Integer.MAX_VALUE) % pairs.length;
+            return pairs[idx];
+        }
+    }
+    
+    @Benchmark
+    public String warmLookup(Warm state, Cursor cursor) {
+        String[] pair = cursor.next(state.pairs);
+        return state.hierarchy.getCommonSuperClass(pair[0], pair[1]);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20, batchSize = COLD_BATCH)
+    @Measurement(iterations = 50, batchSize = COLD_BATCH)
+    public String coldLookup(Cold state, Cursor cursor) {
+        String[] pair = cursor.next(state.pairs);
+        return state.hierarchy.getCommonSuperClass(pair[0], pair[1]);
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-10s %-40s %16s %-8s%n", "Threads", "Benchmark", "Score", "Units"));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                .include(ConcurrentLookupBenchmark.class.getName())
+                .threads(threads)
+                .build();
+            for (RunResult result : new Runner(options).run()) {
+                report.append(String.format("%-10d %-40s %16.3f %-8s%n", 
+                                            threads,
+                                            result.getParams().getBenchmark(),
+                                            result.getPrimaryResult().getScore(),
+                                            result.getPrimaryResult().getScoreUnit()));
+            }
+        }
+        System.out.println(report);
+    }
+}
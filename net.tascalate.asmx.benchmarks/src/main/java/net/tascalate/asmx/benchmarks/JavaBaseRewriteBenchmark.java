@@ -0,0 +1,145 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.HierarchySnapshot;
+import net.tascalate.asmx.plus.JrtResourceLoader;
+import net.tascalate.asmx.plus.OfflineClassWriter;
+import net.tascalate.asmx.plus.jdk.JdkHierarchy;
+
+/**
+ * End-to-end re-writing of every class of <code>java.base</code> of the 
+ * running JDK with {@link OfflineClassWriter} and 
+ * {@link ClassWriter#COMPUTE_FRAMES}. With the <code>cold</code> hierarchy 
+ * every operation starts with a new {@link ClassHierarchy}, the 
+ * <code>snapshot</code> one is a new hierarchy backed by the prebuilt 
+ * {@link JdkHierarchy}, the <code>warm</code> one is shared by all operations.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class JavaBaseRewriteBenchmark {
+    
+    @Param({"cold", "snapshot", "warm"})
+    public String hierarchy;
+    
+    JrtResourceLoader loader;
+    HierarchySnapshot snapshot;
+    ClassHierarchy shared;
+    byte[][] classes;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loader = new JrtResourceLoader();
+        List<byte[]> result = javaBaseClasses();
+        classes = result.toArray(new byte[result.size()][]);
+        if ("snapshot".equals(hierarchy)) {
+            snapshot = JdkHierarchy.snapshot();
+            if (null == snapshot) {
+                throw new IllegalStateException("No prebuilt hierarchy for the running JDK");
+            }
+        } else if ("warm".equals(hierarchy)) {
+            shared = new ClassHierarchy(loader);
+            rewrite(shared);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loader.close();
+    }
+    
+    @Benchmark
+    public long rewriteJavaBase() {
+        return rewrite(null != shared ? shared : new ClassHierarchy(loader, snapshot));
+    }
+    
+    private long rewrite(ClassHierarchy classHierarchy) {
+        long size = 0;
+        for (byte[] bytes : classes) {
+            ClassReader reader = new ClassReader(bytes);
+            ClassWriter writer = new OfflineClassWriter(classHierarchy, ClassWriter.COMPUTE_FRAMES);
+            reader.accept(writer, ClassReader.SKIP_FRAMES);
+            size += writer.toByteArray().length;
+        }
+        return size;
+    }
+    
+    static List<byte[]> javaBaseClasses() throws IOException {
+        final List<byte[]> result = new ArrayList<byte[]>();
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        Files.walkFileTree(jrt.getPath("/modules/java.base"), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".class") && !name.equals("module-info.class")) {
+                    result.add(Files.readAllBytes(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.CompositeResourceLoader;
+import net.tascalate.asmx.plus.HierarchySnapshot;
+import net.tascalate.asmx.plus.JarResourceLoader;
+import net.tascalate.asmx.plus.JrtResourceLoader;
+import net.tascalate.asmx.plus.OfflineClassWriter;
+import net.tascalate.asmx.plus.ResourceLoader;
+import net.tascalate.asmx.plus.jdk.JdkHierarchy;
+
+/**
+ * Cold-start throughput of {@link OfflineClassWriter} with frames computation:
+ * every operation creates a new {@link ClassHierarchy} and re-writes all 
+ * classes of the JMH core library. With <code>baseLayer=true</code> the 
+ * JDK types are resolved from the prebuilt {@link JdkHierarchy} snapshot, 
+ * otherwise they are read from the <code>jrt:/</code> file system.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JdkBaseLayerBenchmark {
+    
+    @Param({"false", "true"})
+    public boolean baseLayer;
+    
+    JrtResourceLoader jdkLoader;
+    ResourceLoader loader;
+    HierarchySnapshot snapshot;
+    byte[][] classes;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File jar = new File(Runner.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        jdkLoader = new JrtResourceLoader();
+        loader = new CompositeResourceLoader(new JarResourceLoader(jar), jdkLoader);
+        if (baseLayer) {
+            snapshot = JdkHierarchy.snapshot();
+            if (null == snapshot) {
+                throw new IllegalStateException("No prebuilt hierarchy for the running JDK");
+            }
+        }
+        List<byte[]> result = ClassHeaderBenchmark.thirdPartyClasses();
+        classes = result.toArray(new byte[result.size()][]);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jdkLoader.close();
+    }
+    
+    @Benchmark
+    public void computeFrames(Blackhole bh) {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, snapshot);
+        for (byte[] bytes : classes) {
+            ClassReader reader = new ClassReader(bytes);
+            ClassWriter writer = new OfflineClassWriter(hierarchy, ClassWriter.COMPUTE_FRAMES);
+            reader.accept(writer, ClassReader.SKIP_FRAMES);
+            bh.consume(writer.toByteArray());
+        }
+    }
+}
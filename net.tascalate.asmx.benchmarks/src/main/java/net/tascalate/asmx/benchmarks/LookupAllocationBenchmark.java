@@ -0,0 +1,168 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.tascalate.asmx.plus.CacheSpec;
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.ResourceLoader;
+
+/**
+ * Allocation per cache hit of {@link ClassHierarchy#getCommonSuperClass(String, String)},
+ * i.e. on the hot path of frames computation, and per cache miss over 
+ * loaded types, i.e. per calculated and stored lookup. Both are measured
+ * with and without {@link CacheSpec#withInvalidationIndex(boolean) invalidation 
+ * indexes}: without them, lookups allocate the same as before indexes existed.
+ * <p>
+ * Run with <code>-prof gc</code> and check <code>gc.alloc.rate.norm</code>, 
+ * or run {@link #main(String[])} that adds the profiler and prints 
+ * bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupAllocationBenchmark {
+    
+    // Layers of the fill benchmark have no own types
+    private static final ResourceLoader NO_TYPES = new ResourceLoader() {
+        public boolean hasResource(String name) {
+            return false;
+        }
+        
+        public InputStream getResourceAsStream(String name) throws IOException {
+            return null;
+        }
+    };
+    
+    @Param({"unbounded", "bounded"})
+    public String cache;
+    
+    @Param({"false", "true"})
+    public boolean invalidationIndex;
+    
+    CacheSpec spec;
+    ClassHierarchy hierarchy;
+    ClassHierarchy types;
+    String[][] pairs;
+    int position;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        spec = ("bounded".equals(cache) ? CacheSpec.bounded(4096) : CacheSpec.unbounded())
+               .withInvalidationIndex(invalidationIndex);
+        hierarchy = new ClassHierarchy(new ClassLoaderResourceLoader(ClassLoader.getSystemClassLoader()), spec);
+        // Loaded types without cached lookups
+        types = new ClassHierarchy(new ClassLoaderResourceLoader(ClassLoader.getSystemClassLoader()), spec);
+        types.preload(Arrays.asList(BenchmarkTypes.JDK_TYPES));
+        pairs = BenchmarkTypes.allPairs(BenchmarkTypes.JDK_TYPES);
+        // Twice: the bounded cache admits pairs seen more than once
+        for (int i = 0; i < 2; i++) {
+            for (String[] pair : pairs) {
+                hierarchy.getCommonSuperClass(pair[0], pair[1]);
+            }
+        }
+    }
+    
+    @Benchmark
+    public String cacheHit() {
+        String[] pair = pairs[position++ % pairs.length];
+        if (position == pairs.length) {
+            position = 0;
+        }
+        return hierarchy.getCommonSuperClass(pair[0], pair[1]);
+    }
+    
+    /**
+     * Every pair is looked up twice (in both orders) over an empty lookup 
+     * cache of the new layer, types are inherited from the loaded parent,
+     * so half of the lookups are calculated and stored.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ConcurrentLookupBenchmark.COLD_BATCH)
+    public void cacheFill(Blackhole blackhole) {
+        ClassHierarchy layer = new ClassHierarchy(types, NO_TYPES, spec);
+        for (String[] pair : pairs) {
+            blackhole.consume(layer.getCommonSuperClass(pair[0], pair[1]));
+        }
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(LookupAllocationBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-12s %-12s %-8s %12s %16s%n", "Benchmark", "Cache", "Index", "ns/op", "B/op"));
+        for (RunResult result : new Runner(options).run()) {
+            Map<String, Result> secondary = result.getSecondaryResults();
+            Result allocated = secondary.get("gc.alloc.rate.norm");
+            String benchmark = result.getParams().getBenchmark();
+            report.append(String.format("%-12s %-12s %-8s %12.3f %16.3f%n", 
+                                        benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                                        result.getParams().getParam("cache"),
+                                        result.getParams().getParam("invalidationIndex"),
+                                        result.getPrimaryResult().getScore(),
+                                        null == allocated ? Double.NaN : allocated.getScore()));
+        }
+        System.out.println(report);
+    }
+}
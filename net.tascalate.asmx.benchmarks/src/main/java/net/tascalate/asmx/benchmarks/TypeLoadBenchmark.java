@@ -0,0 +1,137 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+
+import net.tascalate.asmx.plus.ClassHeader;
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.CompositeResourceLoader;
+import net.tascalate.asmx.plus.JarResourceLoader;
+import net.tascalate.asmx.plus.JrtResourceLoader;
+import net.tascalate.asmx.plus.ResourceLoader;
+
+/**
+ * Cold loading of types into a new {@link ClassHierarchy}: every operation 
+ * loads all types of the corpus with all their super-types. The <code>jdk</code> 
+ * corpus is <code>java.base/java/util</code> of the running JDK, the 
+ * <code>thirdparty</code> corpus is the JMH core library (its JDK super-types 
+ * are loaded as well). The <code>native</code> loaders are {@link JrtResourceLoader}
+ * and {@link JarResourceLoader}, the <code>classloader</code> one reads 
+ * resources via the system class loader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypeLoadBenchmark {
+    
+    private static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    
+    @Param({"jdk", "thirdparty"})
+    public String corpus;
+    
+    @Param({"native", "classloader"})
+    public String loader;
+    
+    JrtResourceLoader jdkLoader;
+    ResourceLoader resourceLoader;
+    List<String> types;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<byte[]> classes;
+        if ("jdk".equals(corpus)) {
+            classes = ClassHeaderBenchmark.jdkClasses();
+        } else {
+            classes = ClassHeaderBenchmark.thirdPartyClasses();
+        }
+        types = new ArrayList<String>(classes.size());
+        for (byte[] bytes : classes) {
+            types.add(ClassHeader.read(ByteBuffer.wrap(bytes)).getClassName());
+        }
+        
+        if ("native".equals(loader)) {
+            jdkLoader = new JrtResourceLoader();
+            if ("jdk".equals(corpus)) {
+                resourceLoader = jdkLoader;
+            } else {
+                File jar = new File(Runner.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+                resourceLoader = new CompositeResourceLoader(new JarResourceLoader(jar), jdkLoader);
+            }
+        } else {
+            resourceLoader = new ClassLoaderResourceLoader(ClassLoader.getSystemClassLoader());
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (null != jdkLoader) {
+            jdkLoader.close();
+        }
+    }
+    
+    @Benchmark
+    public ClassHierarchy loadTypes() {
+        ClassHierarchy hierarchy = new ClassHierarchy(resourceLoader);
+        // Single-threaded, loads are not overlapped
+        hierarchy.preload(types, SAME_THREAD);
+        return hierarchy;
+    }
+}
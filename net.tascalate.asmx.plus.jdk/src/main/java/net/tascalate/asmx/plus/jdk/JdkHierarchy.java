@@ -0,0 +1,121 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus.jdk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.HierarchySnapshot;
+import net.tascalate.asmx.plus.ResourceLoader;
+
+/**
+ * Access to the class hierarchy of the JDK platform classes that is 
+ * generated at build time and shipped as a resource of this module.
+ * <p>
+ * The snapshot is unstamped and is used as a trusted read-only base layer, 
+ * so platform types are resolved without any access to the file system:
+ * <pre>
+ * ClassHierarchy hierarchy = JdkHierarchy.newClassHierarchy(loader);
+ * </pre>
+ * Hierarchies are available for the JDK releases listed in the 
+ * <code>jdk.hierarchy.homes</code> build property (the JDK used for the build 
+ * by default).
+ */
+public final class JdkHierarchy {
+    static final String RESOURCE_PREFIX = "jdk-";
+    static final String RESOURCE_SUFFIX = ".hierarchy";
+    
+    private static final Object MISSING = new Object();
+    private static final ConcurrentMap<Integer, Object> SNAPSHOTS = new ConcurrentHashMap<Integer, Object>();
+    
+    private JdkHierarchy() {}
+    
+    /**
+     * Returns the snapshot for the JDK release of the running JVM 
+     * or null when there is no snapshot for this release.
+     */
+    public static HierarchySnapshot snapshot() throws IOException {
+        return snapshot(currentRelease());
+    }
+    
+    /**
+     * Returns the snapshot for the JDK feature release specified 
+     * or null when there is no snapshot for this release.
+     */
+    public static HierarchySnapshot snapshot(int release) throws IOException {
+        Integer key = Integer.valueOf(release);
+        Object result = SNAPSHOTS.get(key);
+        if (null == result) {
+            InputStream in = JdkHierarchy.class.getResourceAsStream(resourceName(release));
+            // Concurrent readers may parse the same resource, the first one wins
+            Object snapshot = null == in ? MISSING : HierarchySnapshot.read(in);
+            result = SNAPSHOTS.putIfAbsent(key, snapshot);
+            if (null == result) {
+                result = snapshot;
+            }
+        }
+        return result == MISSING ? null : (HierarchySnapshot)result;
+    }
+    
+    /**
+     * Creates a hierarchy that resolves the platform classes of the running JDK
+     * from the prebuilt snapshot (when available) and all other classes 
+     * via the loader specified.
+     */
+    public static ClassHierarchy newClassHierarchy(ResourceLoader loader) throws IOException {
+        return new ClassHierarchy(loader, snapshot());
+    }
+    
+    static String resourceName(int release) {
+        return RESOURCE_PREFIX + release + RESOURCE_SUFFIX;
+    }
+    
+    static int currentRelease() {
+        return parseRelease(System.getProperty("java.specification.version"));
+    }
+    
+    static int parseRelease(String version) {
+        // "1.8" for JDK 8 and earlier, "9", "17", "21" afterwards 
+        // (or "17.0.9" in the JAVA_VERSION of the release file)
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? -1 : Integer.parseInt(version.substring(0, end));
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus.jdk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.HierarchySnapshot;
+import net.tascalate.asmx.plus.JrtResourceLoader;
+import net.tascalate.asmx.plus.ResourceLoader;
+
+/**
+ * Build-time tool that writes the hierarchy of all platform classes 
+ * of the JDK installations specified into the output directory.
+ * <p>
+ * Usage: <code>JdkHierarchyGenerator &lt;output-dir&gt; &lt;java-home&gt;[,&lt;java-home&gt;...]</code>
+ */
+public final class JdkHierarchyGenerator {
+    private static final URI JRT = URI.create("jrt:/");
+    
+    private JdkHierarchyGenerator() {}
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: JdkHierarchyGenerator <output-dir> <java-home>[,<java-home>...]");
+        }
+        File outputDir = new File(args[0], JdkHierarchy.class.getPackage().getName().replace('.', '/'));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + outputDir);
+        }
+        for (String javaHome : args[1].split(",")) {
+            javaHome = javaHome.trim();
+            if (javaHome.length() > 0) {
+                generate(new File(javaHome), outputDir);
+            }
+        }
+    }
+    
+    static void generate(File javaHome, File outputDir) throws IOException {
+        int release = releaseOf(javaHome);
+        if (release < 9) {
+            System.out.println("Skipping non-modular JDK " + javaHome);
+            return;
+        }
+        boolean current = javaHome.getCanonicalFile().equals(new File(System.getProperty("java.home")).getCanonicalFile());
+        final JrtResourceLoader loader = current ? new JrtResourceLoader() : new JrtResourceLoader(javaHome);
+        try {
+            // Hide stamps: the snapshot is a trusted base layer
+            ClassHierarchy hierarchy = new ClassHierarchy(new ResourceLoader() {
+                public boolean hasResource(String name) {
+                    return loader.hasResource(name);
+                }
+                
+                public InputStream getResourceAsStream(String name) throws IOException {
+                    return loader.getResourceAsStream(name);
+                }
+            });
+            List<String> types = listTypes(javaHome, current);
+            File output = new File(outputDir, JdkHierarchy.resourceName(release));
+            // Exactly the types listed, sorted, whatever the cache retains
+            HierarchySnapshot.write(hierarchy, types, output);
+            System.out.println("Generated hierarchy of " + types.size() + " types of JDK " + release + " to " + output);
+        } finally {
+            loader.close();
+        }
+    }
+    
+    private static List<String> listTypes(File javaHome, boolean current) throws IOException {
+        FileSystem fileSystem = current ? 
+            FileSystems.getFileSystem(JRT) :
+            FileSystems.newFileSystem(JRT, Collections.singletonMap("java.home", javaHome.getAbsolutePath()));
+        try {
+            final List<String> result = new ArrayList<String>();
+            DirectoryStream<Path> modules = Files.newDirectoryStream(fileSystem.getPath("/modules"));
+            try {
+                for (final Path module : modules) {
+                    Files.walkFileTree(module, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            String name = module.relativize(file).toString();
+                            if (name.endsWith(".class") && !name.endsWith("module-info.class")) {
+                                result.add(name.substring(0, name.length() - ".class".length()));
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                }
+            } finally {
+                modules.close();
+            }
+            Collections.sort(result);
+            return result;
+        } finally {
+            if (!current) {
+                fileSystem.close();
+            }
+        }
+    }
+    
+    private static int releaseOf(File javaHome) throws IOException {
+        File releaseFile = new File(javaHome, "release");
+        if (!releaseFile.isFile()) {
+            throw new IOException("Not a JDK installation: " + javaHome);
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(releaseFile);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        String version = properties.getProperty("JAVA_VERSION", "").replace("\"", "");
+        return JdkHierarchy.parseRelease(version);
+    }
+}
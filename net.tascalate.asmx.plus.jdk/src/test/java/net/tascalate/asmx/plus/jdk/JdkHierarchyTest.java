@@ -0,0 +1,105 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus.jdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.tascalate.asmx.plus.ClassHierarchy;
+import net.tascalate.asmx.plus.HierarchySnapshot;
+import net.tascalate.asmx.plus.ResourceLoader;
+
+public class JdkHierarchyTest {
+    
+    @Test
+    public void testParseRelease() {
+        assertEquals(8, JdkHierarchy.parseRelease("1.8"));
+        assertEquals(11, JdkHierarchy.parseRelease("11"));
+        assertEquals(17, JdkHierarchy.parseRelease("17.0.9"));
+        assertEquals(-1, JdkHierarchy.parseRelease(""));
+    }
+    
+    @Test
+    public void testMissingRelease() throws IOException {
+        assertNull(JdkHierarchy.snapshot(1));
+    }
+    
+    @Test
+    public void testNoResourceAccess() throws IOException {
+        HierarchySnapshot snapshot = JdkHierarchy.snapshot();
+        // Tests may run on a JDK that is different from the one used by the build 
+        assumeNotNull(snapshot);
+        assertSame(snapshot, JdkHierarchy.snapshot());
+        
+        final AtomicInteger reads = new AtomicInteger();
+        ClassHierarchy hierarchy = new ClassHierarchy(new ResourceLoader() {
+            public boolean hasResource(String name) {
+                reads.incrementAndGet();
+                return false;
+            }
+            
+            public InputStream getResourceAsStream(String name) {
+                reads.incrementAndGet();
+                return null;
+            }
+        }, snapshot);
+        assertEquals("java/util/AbstractCollection", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/HashSet"));
+        assertEquals("java/util/AbstractMap", hierarchy.getCommonSuperClass("java/util/TreeMap", "java/util/concurrent/ConcurrentHashMap"));
+        assertEquals("java/lang/Number", hierarchy.getCommonSuperClass("java/lang/Integer", "java/math/BigDecimal"));
+        assertEquals(0, reads.get());
+    }
+    
+    @Test
+    public void testNewClassHierarchy() throws IOException {
+        assumeNotNull(JdkHierarchy.snapshot());
+        ClassHierarchy hierarchy = JdkHierarchy.newClassHierarchy(new ResourceLoader() {
+            public boolean hasResource(String name) {
+                return false;
+            }
+            
+            public InputStream getResourceAsStream(String name) {
+                return null;
+            }
+        });
+        assertNotNull(hierarchy);
+        assertEquals("java/lang/RuntimeException", hierarchy.getCommonSuperClass("java/lang/IllegalStateException", "java/lang/ArithmeticException"));
+    }
+}
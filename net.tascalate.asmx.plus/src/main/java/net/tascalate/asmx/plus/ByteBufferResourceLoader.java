@@ -0,0 +1,60 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Optional capability of a {@link ResourceLoader} to return resource content 
+ * without copying it through an {@link java.io.InputStream}.
+ * <p>
+ * Consumers check for this interface with <code>instanceof</code> and fall 
+ * back to {@link #getResourceAsStream(String)} otherwise, so existing loaders 
+ * keep working unchanged. Use {@link ResourceLoaders} to get the content
+ * of an arbitrary loader in the most efficient way.
+ */
+public interface ByteBufferResourceLoader extends ResourceLoader {
+    /**
+     * Returns the content of the resource as a buffer positioned at the first 
+     * byte of the resource with the limit set right after the last one. 
+     * <p>
+     * The buffer may be a read-only slice of a memory-mapped region or wrap 
+     * a heap array; it is never shared between callers, so the caller may 
+     * change its position and limit freely. The content must not be modified.
+     * 
+     * @param name the resource name
+     * @return the resource content
+     * @throws IOException if the resource does not exist or can't be read
+     */
+    ByteBuffer getResourceAsBuffer(String name) throws IOException;
+}
@@ -0,0 +1,130 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+/**
+ * Specification of the {@link ClassHierarchy} lookup cache, i.e. the cache 
+ * of common super-classes calculated for pairs of types.
+ * <p>
+ * An unbounded cache keeps every pair ever queried. A bounded cache keeps 
+ * at most <code>maximumSize</code> pairs and evicts entries that are used 
+ * less frequently; new pairs that are queried less frequently than 
+ * the candidates for eviction are not admitted at all, so one-time scans 
+ * do not flush the pairs used over and over again.
+ * <p>
+ * Caches have no invalidation indexes by default, so 
+ * {@link ClassHierarchy#invalidate(java.util.Collection)} examines all 
+ * loaded types and cached pairs; hierarchies that are invalidated often 
+ * should use {@link #withInvalidationIndex(boolean) indexed} caches.
+ */
+public final class CacheSpec {
+    public static final int UNBOUNDED = -1;
+    
+    /**
+     * The cache that keeps every pair ever queried.
+     */
+    public static final CacheSpec DEFAULT = new CacheSpec(UNBOUNDED, defaultConcurrencyLevel(), false);
+    
+    private final int maximumSize;
+    private final int concurrencyLevel;
+    private final boolean invalidationIndex;
+    
+    private CacheSpec(int maximumSize, int concurrencyLevel, boolean invalidationIndex) {
+        if (maximumSize < 0 && maximumSize != UNBOUNDED) {
+            throw new IllegalArgumentException("Invalid maximum size: " + maximumSize);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency level: " + concurrencyLevel);
+        }
+        this.maximumSize = maximumSize;
+        this.concurrencyLevel = concurrencyLevel;
+        this.invalidationIndex = invalidationIndex;
+    }
+    
+    public static CacheSpec unbounded() {
+        return DEFAULT;
+    }
+    
+    public static CacheSpec bounded(int maximumSize) {
+        return new CacheSpec(maximumSize, defaultConcurrencyLevel(), false);
+    }
+    
+    /**
+     * Returns a specification with the number of independently locked 
+     * segments of the cache set to the smallest power of two that is not 
+     * less than the <code>concurrencyLevel</code>.
+     */
+    public CacheSpec withConcurrencyLevel(int concurrencyLevel) {
+        return new CacheSpec(maximumSize, concurrencyLevel, invalidationIndex);
+    }
+    
+    /**
+     * Returns a specification with the invalidation indexes enabled or disabled.
+     * Indexed caches keep cached pairs by type and sub-types of every loaded 
+     * type, so the cost of {@link ClassHierarchy#invalidate(java.util.Collection)} 
+     * depends only on the number of affected types and pairs. Every pair 
+     * stored and every type loaded is indexed, and the index of sub-types 
+     * is not shrunk when types are evicted from the cache, only when they 
+     * are invalidated.
+     */
+    public CacheSpec withInvalidationIndex(boolean invalidationIndex) {
+        return new CacheSpec(maximumSize, concurrencyLevel, invalidationIndex);
+    }
+    
+    public boolean isBounded() {
+        return maximumSize != UNBOUNDED;
+    }
+    
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+    
+    public boolean hasInvalidationIndex() {
+        return invalidationIndex;
+    }
+    
+    private static int defaultConcurrencyLevel() {
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + 
+               "[maximumSize=" + (isBounded() ? String.valueOf(maximumSize) : "unbounded") + 
+               ", concurrencyLevel=" + concurrencyLevel + 
+               ", invalidationIndex=" + invalidationIndex + "]";
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import net.tascalate.asmx.Opcodes;
+
+/**
+ * The part of a class file that is necessary to build a class hierarchy: 
+ * access flags, the class name, the super class name and the names of 
+ * implemented interfaces.
+ * <p>
+ * Unlike {@link net.tascalate.asmx.ClassReader}, the {@link #read(InputStream)}
+ * method does not load the whole class file: the constant pool is scanned 
+ * just to record entry offsets, parsing stops right after the interfaces 
+ * table (before fields, methods and attributes), and only the UTF8 entries 
+ * that hold the resulting names are decoded.
+ */
+public final class ClassHeader {
+    private final int access;
+    private final String className;
+    private final String superName;
+    private final String[] interfaces;
+    
+    public ClassHeader(int access, String className, String superName, String[] interfaces) {
+        this.access = access;
+        this.className = className;
+        this.superName = superName;
+        this.interfaces = null == interfaces ? ClassHierarchy.EMPTY_STRINGS : interfaces.clone();
+    }
+    
+    public int getAccess() {
+        return access;
+    }
+    
+    public String getClassName() {
+        return className;
+    }
+    
+    public String getSuperName() {
+        return superName;
+    }
+    
+    public String[] getInterfaces() {
+        return interfaces.length == 0 ? interfaces : interfaces.clone();
+    }
+    
+    public boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+    
+    String[] interfaces() {
+        return interfaces;
+    }
+    
+    @Override
+    public String toString() {
+        return className;
+    }
+    
+    public static ClassHeader read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+    
+    /**
+     * Reads the header from the stream; the name of the resource, 
+     * if specified, is reported by exceptions on malformed input.
+     */
+    public static ClassHeader read(InputStream in, String name) throws IOException {
+        return new StreamParser(in, name).parse();
+    }
+    
+    /**
+     * Reads the header from the remaining bytes of the buffer. 
+     * Neither position nor limit of the buffer is changed, and 
+     * direct (memory-mapped) buffers are parsed in place.
+     */
+    public static ClassHeader read(ByteBuffer buffer) throws IOException {
+        return read(buffer, null);
+    }
+    
+    /**
+     * Reads the header from the remaining bytes of the buffer like 
+     * {@link #read(ByteBuffer)} does; the name of the resource, 
+     * if specified, is reported by exceptions on malformed input.
+     */
+    public static ClassHeader read(ByteBuffer buffer, String name) throws IOException {
+        if (buffer.hasArray()) {
+            return new ArrayParser(buffer.array(), 
+                                   buffer.arrayOffset() + buffer.position(), 
+                                   buffer.remaining(),
+                                   name).parse();
+        } else {
+            return new BufferParser(buffer, name).parse();
+        }
+    }
+    
+    abstract static class Parser {
+        private final String name;
+        int limit;
+        
+        Parser(int limit, String name) {
+            this.limit = limit;
+            this.name = name;
+        }
+        
+        abstract int u1(int offset);
+        
+        int u2(int offset) {
+            return (u1(offset) << 8) | u1(offset + 1);
+        }
+        
+        /**
+         * Makes sure that bytes up to the position <code>end</code> 
+         * (exclusive) are available in the buffer.
+         */
+        void require(int end) throws IOException {
+            if (end > limit) {
+                throw new EOFException(message("Truncated class file"));
+            }
+        }
+        
+        String message(String message) {
+            return null == name ? message : message + ": " + name;
+        }
+        
+        ClassHeader parse() throws IOException {
+            require(10);
+            if (u2(0) != 0xCAFE || u2(2) != 0xBABE) {
+                throw new IOException(message("Not a class file"));
+            }
+            int constantPoolCount = u2(8);
+            int[] offsets = new int[constantPoolCount];
+            int offset = 10;
+            for (int i = 1; i < constantPoolCount; i++) {
+                if (offset + 3 > limit) {
+                    require(offset + 3);
+                }
+                offsets[i] = offset + 1;
+                int tag = u1(offset);
+                int size;
+                switch (tag) {
+                    case 1: // Utf8
+                        size = 3 + u2(offset + 1);
+                        break;
+                    case 7:  // Class
+                    case 8:  // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        size = 3;
+                        break;
+                    case 15: // MethodHandle
+                        size = 4;
+                        break;
+                    case 3:  // Integer
+                    case 4:  // Float
+                    case 9:  // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        size = 5;
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        size = 9;
+                        // Takes two constant pool slots
+                        i++;
+                        break;
+                    default:
+                        throw new IOException(message("Unknown constant pool tag " + tag));
+                }
+                offset += size;
+            }
+            // access_flags, this_class, super_class, interfaces_count
+            require(offset + 8);
+            int access = u2(offset);
+            String className = className(offsets, u2(offset + 2));
+            int superIndex = u2(offset + 4);
+            String superName = superIndex == 0 ? null : className(offsets, superIndex);
+            int interfacesCount = u2(offset + 6);
+            offset += 8;
+            String[] interfaces;
+            if (interfacesCount == 0) {
+                interfaces = ClassHierarchy.EMPTY_STRINGS;
+            } else {
+                require(offset + 2 * interfacesCount);
+                interfaces = new String[interfacesCount];
+                for (int i = 0; i < interfacesCount; i++) {
+                    interfaces[i] = className(offsets, u2(offset));
+                    offset += 2;
+                }
+            }
+            return new ClassHeader(access, className, superName, interfaces);
+        }
+        
+        private String className(int[] offsets, int classIndex) throws IOException {
+            int utf8Index = u2(entry(offsets, classIndex, 7, "Class"));
+            return utf8(entry(offsets, utf8Index, 1, "Utf8"));
+        }
+        
+        /**
+         * Returns the offset of the constant pool entry (right after the tag) 
+         * after making sure that the entry exists and has the tag expected.
+         */
+        private int entry(int[] offsets, int index, int tag, String kind) throws IOException {
+            // Zero offset is the index 0 or the second slot of a Long or a Double
+            if (index <= 0 || index >= offsets.length || offsets[index] == 0) {
+                throw new IOException(message("Invalid constant pool index " + index));
+            }
+            int offset = offsets[index];
+            if (u1(offset - 1) != tag) {
+                throw new IOException(message("Constant pool entry " + index + " is not " + kind + 
+                                              " but has tag " + u1(offset - 1)));
+            }
+            return offset;
+        }
+        
+        private String utf8(int offset) throws IOException {
+            // Modified UTF-8, see JVMS 4.4.7
+            int length = u2(offset);
+            int position = offset + 2;
+            int end = position + length;
+            char[] chars = new char[length];
+            int count = 0;
+            while (position < end) {
+                int c = u1(position++);
+                if ((c & 0x80) == 0) {
+                    chars[count++] = (char)(c & 0x7F);
+                } else if (position + ((c & 0xE0) == 0xC0 ? 1 : 2) > end) {
+                    // Multi-byte sequence truncated by the end of the entry
+                    throw new IOException(message("Malformed Utf8 constant at offset " + offset));
+                } else if ((c & 0xE0) == 0xC0) {
+                    chars[count++] = (char)(((c & 0x1F) << 6) + (u1(position++) & 0x3F));
+                } else {
+                    chars[count++] = (char)(((c & 0xF) << 12) + 
+                                            ((u1(position++) & 0x3F) << 6) + 
+                                            (u1(position++) & 0x3F));
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    }
+    
+    static class ArrayParser extends Parser {
+        byte[] bytes;
+        private final int base;
+        
+        ArrayParser(byte[] bytes, int base, int limit, String name) {
+            super(limit, name);
+            this.bytes = bytes;
+            this.base = base;
+        }
+        
+        @Override
+        final int u1(int offset) {
+            return bytes[base + offset] & 0xFF;
+        }
+    }
+    
+    static class BufferParser extends Parser {
+        private final ByteBuffer buffer;
+        private final int base;
+        
+        BufferParser(ByteBuffer buffer, String name) {
+            super(buffer.remaining(), name);
+            this.buffer = buffer;
+            this.base = buffer.position();
+        }
+        
+        @Override
+        final int u1(int offset) {
+            return buffer.get(base + offset) & 0xFF;
+        }
+    }
+    
+    static class StreamParser extends ArrayParser {
+        private final InputStream in;
+        
+        StreamParser(InputStream in, String name) throws IOException {
+            // The available() hint is exact for in-memory streams,
+            // but it is never trusted beyond the initial capacity
+            super(new byte[Math.max(1024, Math.min(in.available(), 16384))], 0, 0, name);
+            this.in = in;
+        }
+        
+        @Override
+        void require(int end) throws IOException {
+            if (end <= limit) {
+                return;
+            }
+            if (end > bytes.length) {
+                byte[] newBytes = new byte[Math.max(end, bytes.length * 2)];
+                System.arraycopy(bytes, 0, newBytes, 0, limit);
+                bytes = newBytes;
+            }
+            // Read as much as the buffer can hold, but never
+            // block waiting for more than is actually required
+            while (limit < end) {
+                int count = in.read(bytes, limit, bytes.length - limit);
+                if (count < 0) {
+                    throw new EOFException(message("Truncated class file"));
+                }
+                limit += count;
+            }
+        }
+    }
+}
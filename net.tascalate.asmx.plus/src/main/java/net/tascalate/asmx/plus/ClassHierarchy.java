@@ -32,24 +32,34 @@
 package net.tascalate.asmx.plus;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
-import net.tascalate.asmx.ClassReader;
 import net.tascalate.asmx.Opcodes;
 import net.tascalate.asmx.Type;
 
@@ -60,44 +70,231 @@ import net.tascalate.asmx.Type;
  * @author vsilaev
  */
 public class ClassHierarchy {
+    private static final AtomicIntegerFieldUpdater<TypeInfo> INTERFACE_ORDINAL = 
+        AtomicIntegerFieldUpdater.newUpdater(TypeInfo.class, "interfaceOrdinal");
     
     private final ResourceLoader loader;
-    private final Map<Key, String> lookupCache;
-    private final Map<TypeInfo, Reference<TypeInfo>> typesCache; 
+    // Null for the root layer
+    private final ClassHierarchy parent;
+    private final HierarchySnapshot snapshot;
+    private final SymbolTable symbols;
+    private final LookupCache lookupCache;
+    // Dense numbering of interfaces for ancestors bitsets
+    private final AtomicInteger interfaceOrdinals;
+    private final TypeCache<TypeInfo> typesCache; 
+    // Negative cache: types that are not found by the loader
+    private final ConcurrentMap<String, MissingType> missingTypes;
+    // Types changed after the snapshot was taken, never read from the snapshot
+    private final Set<String> reloadedTypes;
+    // Reverse dependency index for invalidation, 
+    // null unless enabled by the specification of the lookup cache
+    private final SubTypeIndex subTypes;
+    private final UnresolvedTypePolicy unresolvedTypePolicy;
+    // Null when measurements are disabled
+    private final HierarchyMonitor monitor;
+    private final TypeCache.Loader<TypeInfo> typesLoader = new TypeCache.Loader<TypeInfo>() {
+        public TypeInfo load(String type, HierarchyMonitor monitor) throws IOException {
+            return loadTypeInfo(type, monitor);
+        }
+    };
     
     public ClassHierarchy(ResourceLoader loader) {
+        this(loader, null, CacheSpec.DEFAULT);
+    }
+    
+    public ClassHierarchy(ResourceLoader loader, CacheSpec lookupCacheSpec) {
+        this(loader, null, lookupCacheSpec);
+    }
+    
+    public ClassHierarchy(ResourceLoader loader, HierarchySnapshot snapshot) {
+        this(loader, snapshot, CacheSpec.DEFAULT);
+    }
+    
+    /**
+     * Creates a hierarchy that resolves types from the snapshot first; 
+     * types that are absent in the snapshot, or whose snapshot entries are 
+     * stale, are loaded with the loader.
+     * 
+     * @param loader the loader of class files
+     * @param snapshot the persisted hierarchy, may be null
+     * @param lookupCacheSpec the specification of the cache of calculated common super-classes
+     */
+    public ClassHierarchy(ResourceLoader loader, HierarchySnapshot snapshot, CacheSpec lookupCacheSpec) {
+        this(loader, snapshot, lookupCacheSpec, UnresolvedTypePolicy.FAIL_FAST);
+    }
+    
+    /**
+     * Creates a hierarchy like {@link #ClassHierarchy(ResourceLoader, HierarchySnapshot, CacheSpec)}
+     * that treats types missing in the loader according to the policy specified. 
+     * 
+     * @param loader the loader of class files
+     * @param snapshot the persisted hierarchy, may be null
+     * @param lookupCacheSpec the specification of the cache of calculated common super-classes
+     * @param unresolvedTypePolicy the policy for types that can't be found
+     */
+    public ClassHierarchy(ResourceLoader loader, 
+                          HierarchySnapshot snapshot, 
+                          CacheSpec lookupCacheSpec, 
+                          UnresolvedTypePolicy unresolvedTypePolicy) {
+        if (null == unresolvedTypePolicy) {
+            throw new IllegalArgumentException("Unresolved type policy may not be null");
+        }
         this.loader = loader;
-        this.lookupCache  = new HashMap<Key, String>();
-        this.typesCache = new WeakHashMap<TypeInfo, Reference<TypeInfo>>();
+        this.parent = null;
+        this.snapshot = snapshot;
+        this.symbols = new SymbolTable();
+        this.lookupCache  = new LookupCache(lookupCacheSpec);
+        this.interfaceOrdinals = new AtomicInteger();
+        this.typesCache = new TypeCache<TypeInfo>();
+        this.missingTypes = new ConcurrentHashMap<String, MissingType>();
+        this.reloadedTypes = ConcurrentHashMap.<String>newKeySet();
+        this.subTypes = lookupCacheSpec.hasInvalidationIndex() ? new SubTypeIndex() : null;
+        this.unresolvedTypePolicy = unresolvedTypePolicy;
+        this.monitor = null;
         // Next will never be removed from the cache
         // while there is a hard-reference
         for (TypeInfo ti : SPECIAL_CLASSES) {
-            typesCache.put(ti, new SoftReference<TypeInfo>(ti));
+            typesCache.put(ti.name, ti);
+        }
+    }
+    
+    /**
+     * Same as {@link #ClassHierarchy(ClassHierarchy, ResourceLoader, CacheSpec)} 
+     * with the default lookup cache.
+     */
+    public ClassHierarchy(ClassHierarchy parent, ResourceLoader loader) {
+        this(parent, loader, CacheSpec.DEFAULT);
+    }
+    
+    /**
+     * Creates the layer on top of the parent hierarchy, like a hierarchy 
+     * per application over the shared hierarchy of the JDK and common libraries.
+     * <p>
+     * Types are looked up in the loader of the layer first, types it doesn't 
+     * have are taken from the parent, so different layers may have different 
+     * versions of the same type. Types of the parent are cached by the parent 
+     * and shared by all its layers, as well as lookups the parent calculated 
+     * itself; the layer keeps its own types, references to inherited types 
+     * and all lookups it calculates. So the loader of the layer should cover 
+     * only what is not in the parent. Inherited types that extend a type 
+     * shadowed by the layer are sub-types of the version of the parent only.
+     * <p>
+     * The parent is not affected by its layers and should not change 
+     * while layers are in use; types found nowhere are handled by the 
+     * {@link UnresolvedTypePolicy} of the root hierarchy.
+     * 
+     * @param parent the parent hierarchy
+     * @param loader the loader of class files of this layer
+     * @param lookupCacheSpec the specification of the cache of calculated common super-classes
+     */
+    public ClassHierarchy(ClassHierarchy parent, ResourceLoader loader, CacheSpec lookupCacheSpec) {
+        if (null == parent) {
+            throw new IllegalArgumentException("Parent hierarchy may not be null");
+        }
+        this.loader = loader;
+        this.parent = parent;
+        this.snapshot = null;
+        // Ids and ordinals must be unique across layers, 
+        // ancestors indexes of layers refer to types of parents
+        this.symbols = parent.symbols;
+        this.lookupCache = new LookupCache(lookupCacheSpec);
+        this.interfaceOrdinals = parent.interfaceOrdinals;
+        this.typesCache = new TypeCache<TypeInfo>();
+        this.missingTypes = new ConcurrentHashMap<String, MissingType>();
+        this.reloadedTypes = ConcurrentHashMap.<String>newKeySet();
+        this.subTypes = lookupCacheSpec.hasInvalidationIndex() ? new SubTypeIndex() : null;
+        this.unresolvedTypePolicy = parent.unresolvedTypePolicy;
+        this.monitor = null;
+        // Built-ins of the root, so interfaces have the same ordinals
+        try {
+            for (TypeInfo ti : SPECIAL_CLASSES) {
+                typesCache.put(ti.name, parent.getTypeInfo(ti.name));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
         }
     }
     
     private ClassHierarchy(ResourceLoader loader,
-                           Map<Key, String> lookupCache, 
-                           Map<TypeInfo, Reference<TypeInfo>> typesCache) {
+                           ClassHierarchy parent,
+                           HierarchySnapshot snapshot,
+                           SymbolTable symbols,
+                           LookupCache lookupCache, 
+                           AtomicInteger interfaceOrdinals,
+                           TypeCache<TypeInfo> typesCache,
+                           ConcurrentMap<String, MissingType> missingTypes,
+                           Set<String> reloadedTypes,
+                           SubTypeIndex subTypes,
+                           UnresolvedTypePolicy unresolvedTypePolicy,
+                           HierarchyMonitor monitor) {
         this.loader = loader;
-        this.lookupCache = lookupCache;        
+        this.parent = parent;
+        this.snapshot = snapshot;
+        this.symbols = symbols;
+        this.lookupCache = lookupCache;
+        this.interfaceOrdinals = interfaceOrdinals;
         this.typesCache = typesCache;
+        this.missingTypes = missingTypes;
+        this.reloadedTypes = reloadedTypes;
+        this.subTypes = subTypes;
+        this.unresolvedTypePolicy = unresolvedTypePolicy;
+        this.monitor = monitor;
     }
 
     public ResourceLoader loader() {
         return loader;
     }
     
+    /**
+     * Returns the parent layer or null for the root hierarchy.
+     */
+    public ClassHierarchy parent() {
+        return parent;
+    }
+    
     public ClassHierarchy shareWith(ResourceLoader resourceLoader) {
         if (resourceLoader == this.loader) {
             return this;
         }
-        return new ClassHierarchy(resourceLoader, lookupCache, typesCache);
+        return new ClassHierarchy(resourceLoader, parent, snapshot, symbols, lookupCache, interfaceOrdinals, 
+                                  typesCache, missingTypes, reloadedTypes, subTypes, unresolvedTypePolicy, monitor);
+    }
+    
+    /**
+     * Returns the hierarchy that shares all caches with this one and reports 
+     * lookups, type loads and lock waits to the monitor specified. To measure 
+     * resource reads as well, use the loader returned by 
+     * {@link HierarchyMonitors#monitored(ResourceLoader, HierarchyMonitor)}.
+     * 
+     * @param monitor the monitor, or null to disable measurements
+     * @return the monitored hierarchy
+     */
+    public ClassHierarchy withMonitor(HierarchyMonitor monitor) {
+        if (monitor == this.monitor) {
+            return this;
+        }
+        return new ClassHierarchy(loader, parent, snapshot, symbols, lookupCache, interfaceOrdinals, 
+                                  typesCache, missingTypes, reloadedTypes, subTypes, unresolvedTypePolicy, monitor);
+    }
+
+    /**
+     * Returns statistics of the cache of calculated common super-classes,
+     * the cache is shared by all hierarchies created via {@link #shareWith(ResourceLoader)}.
+     */
+    public CacheStats getLookupCacheStats() {
+        return lookupCache.stats();
     }
 
     public boolean isSubClass(String type1, String type2) {
-        String commonSuperClass = getCommonSuperClass(type1, type2);
-        return type2.equals(commonSuperClass);
+        if (type1.equals(type2) || OBJECT.name.equals(type2)) {
+            return true;
+        }
+        try {
+            // Constant time once ancestors of both types are resolved
+            return resolveTypeInfo(type1, monitor).isSubclassOf(resolveTypeInfo(type2, monitor));
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
     }
     
     public boolean isSuperClass(String type1, String type2) {
@@ -107,81 +304,573 @@ public class ClassHierarchy {
     }
 
     public String getCommonSuperClass(String type1, String type2) {
-        Key key = new Key(type1, type2);
-        String result;
-        synchronized (lookupCache) {
-            result = lookupCache.get(key);
-            if (null == result) {
-                result = calculateCommonSuperClass(type1, type2);
-                lookupCache.put(key, result);
+        if (null != monitor) {
+            return getCommonSuperClass(type1, type2, monitor);
+        }
+        // Cache hit allocates nothing: ids are interned, the key is a packed long
+        int id1 = symbols.idOf(type1);
+        int id2 = symbols.idOf(type2);
+        int result = lookupCache.get(id1, id2);
+        if (SymbolTable.NONE == result) {
+            // Results calculated from types invalidated meanwhile are not cached
+            long epoch = lookupCache.epoch();
+            try {
+                TypeInfo info1 = resolveTypeInfo(type1, null);
+                TypeInfo info2 = resolveTypeInfo(type2, null);
+                ClassHierarchy layer = layerOf(info1, info2);
+                if (layer != this) {
+                    result = layer.lookupCache.get(id1, id2);
+                }
+                if (SymbolTable.NONE == result) {
+                    // Calculated outside of any lock: concurrent calculations
+                    // of the same pair are idempotent, so the first published 
+                    // result wins and the rest are discarded
+                    result = lookupCache.putIfAbsent(id1, id2, symbols.idOf(calculateCommonSuperClass(info1, info2)), epoch, null);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e.toString(), e);
             }
         }
-        return result;
+        return symbols.nameOf(result);
+    }
+    
+    private String getCommonSuperClass(String type1, String type2, HierarchyMonitor monitor) {
+        Object context = monitor.started(HierarchyMonitor.Operation.LOOKUP);
+        long start = System.nanoTime();
+        int id1 = symbols.idOf(type1);
+        int id2 = symbols.idOf(type2);
+        int result = lookupCache.get(id1, id2);
+        boolean hit = SymbolTable.NONE != result;
+        if (!hit) {
+            long epoch = lookupCache.epoch();
+            try {
+                TypeInfo info1 = resolveTypeInfo(type1, monitor);
+                TypeInfo info2 = resolveTypeInfo(type2, monitor);
+                ClassHierarchy layer = layerOf(info1, info2);
+                if (layer != this) {
+                    // Cached by the parent layer is a hit as well
+                    result = layer.lookupCache.get(id1, id2);
+                    hit = SymbolTable.NONE != result;
+                }
+                if (!hit) {
+                    result = lookupCache.putIfAbsent(id1, id2, symbols.idOf(calculateCommonSuperClass(info1, info2)), epoch, monitor);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+        monitor.lookupCompleted(context, type1, type2, hit, System.nanoTime() - start);
+        return symbols.nameOf(result);
+    }
+    
+    /**
+     * Returns the layer whose cached lookups of both types are valid for 
+     * this one: the nearest one that owns either type. Layers share symbols, 
+     * so ids are the same.
+     */
+    private ClassHierarchy layerOf(TypeInfo info1, TypeInfo info2) {
+        ClassHierarchy layer = this;
+        while (null != layer.parent && !info1.isOwnedBy(layer) && !info2.isOwnedBy(layer)) {
+            layer = layer.parent;
+        }
+        return layer;
     }
     
     public Type getCommonSuperType(Type type1, Type type2) {
         return Type.getObjectType(getCommonSuperClass(type1.getInternalName(), type2.getInternalName()));
     }
     
-    private String calculateCommonSuperClass(final String type1, final String type2) {
+    /**
+     * Same as {@link #getCommonSuperClassAsync(String, String, Executor)} 
+     * with the common fork-join pool.
+     */
+    public CompletableFuture<String> getCommonSuperClassAsync(String type1, String type2) {
+        return getCommonSuperClassAsync(type1, type2, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Asynchronous version of {@link #getCommonSuperClass(String, String)}.
+     * Types that are not loaded yet are loaded by the executor, loads of 
+     * super-types are composed without blocking any thread. Asynchronous and 
+     * synchronous requests for the same type share a single in-flight load, 
+     * and results are stored in the same caches. 
+     * <p>
+     * When a type can't be loaded, the future fails with the 
+     * {@link IOException} of the loader as a cause.
+     */
+    public CompletableFuture<String> getCommonSuperClassAsync(final String type1, final String type2, Executor executor) {
+        return getTypeInfoAsync(type1, executor).thenCombine(
+            getTypeInfoAsync(type2, executor), 
+            new BiFunction<TypeInfo, TypeInfo, String>() {
+                public String apply(TypeInfo info1, TypeInfo info2) {
+                    // Everything is loaded, no I/O here
+                    return getCommonSuperClass(type1, type2);
+                }
+            }
+        );
+    }
+    
+    /**
+     * Asynchronous version of {@link #isSubClass(String, String)}, 
+     * see {@link #getCommonSuperClassAsync(String, String, Executor)}.
+     */
+    public CompletableFuture<Boolean> isSubClassAsync(final String type1, final String type2, Executor executor) {
+        return getTypeInfoAsync(type1, executor).thenCombine(
+            getTypeInfoAsync(type2, executor), 
+            new BiFunction<TypeInfo, TypeInfo, Boolean>() {
+                public Boolean apply(TypeInfo info1, TypeInfo info2) {
+                    return Boolean.valueOf(isSubClass(type1, type2));
+                }
+            }
+        );
+    }
+    
+    /**
+     * Same as {@link #preload(Collection, Executor)} with the common fork-join pool.
+     */
+    public void preload(Collection<String> types) {
+        preload(types, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Loads the types specified with all their super-types, so subsequent 
+     * queries for these types do no I/O. Every type is loaded by a separate 
+     * task submitted to the executor, as soon as the header of a type is 
+     * read, its direct super-types are submitted as well. The method returns 
+     * when all tasks are completed.
+     * 
+     * @param types internal names of classes, interfaces or arrays
+     * @param executor the executor to run loading tasks
+     */
+    public void preload(Collection<String> types, Executor executor) {
+        Preload preload = new Preload(executor);
+        for (String type : types) {
+            preload.submit(type);
+        }
+        preload.await();
         try {
-            TypeInfo info1 = getTypeInfo(type1);
-            TypeInfo info2 = getTypeInfo(type2);
-            // Fast check without deep loading of info2
-            if (info1.isSubclassOf(info2)) {
-                return type2;
-            }
-            // The reverse, now both will be loaded
-            if (info2.isSubclassOf(info1)) {
-                return type1;
-            }
-            // Generic (worst) case -- flattening hierarchies
-            List<TypeInfo> supers1 = info1.flattenHierarchy();
-            List<TypeInfo> supers2 = info2.flattenHierarchy();
-            // Matching from the most specific to least specific
-            for (TypeInfo a : supers1) {
-                for (TypeInfo b : supers2) {
-                    if (a.equals(b)) {
-                        return a.name;
+            // Ancestors indexes are built from the loaded types, no I/O here
+            for (String type : types) {
+                getTypeInfo(type).ancestors();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+    
+    /**
+     * Calculates common super-classes of all pairs specified. All distinct 
+     * types of the pairs are {@link #preload(Collection, Executor) preloaded}
+     * in parallel first.
+     * 
+     * @param pairs pairs of internal names
+     * @param executor the executor to run loading tasks
+     * @return the list of common super-classes in the order of pairs
+     */
+    public List<String> getCommonSuperClasses(List<? extends Map.Entry<String, String>> pairs, Executor executor) {
+        Set<String> types = new LinkedHashSet<String>();
+        for (Map.Entry<String, String> pair : pairs) {
+            types.add(pair.getKey());
+            types.add(pair.getValue());
+        }
+        preload(types, executor);
+        List<String> result = new ArrayList<String>(pairs.size());
+        for (Map.Entry<String, String> pair : pairs) {
+            result.add(getCommonSuperClass(pair.getKey(), pair.getValue()));
+        }
+        return result;
+    }
+    
+    /**
+     * Same as {@link #invalidate(Collection)}.
+     */
+    public void invalidate(String... internalNames) {
+        invalidate(Arrays.asList(internalNames));
+    }
+    
+    /**
+     * Drops everything known about the types specified, like classes 
+     * redefined at run time, so they are loaded from the loader again on 
+     * the next use. The caches are updated in place: the types themselves, 
+     * all their sub-types (including arrays) and every cached lookup that 
+     * involves any of them are evicted, everything unrelated stays cached. 
+     * <p>
+     * When the lookup cache is created with the 
+     * {@link CacheSpec#withInvalidationIndex(boolean) invalidation index}, 
+     * affected types are found with the reverse index of sub-types and 
+     * their lookups with the index of the lookup cache, so the cost depends 
+     * on the number of affected types and of their cached lookups (plus a 
+     * constant per cache segment), not on the size of the caches. Types that 
+     * were never resolved are skipped. Otherwise all loaded types and all 
+     * cached lookups are examined, and lookups of types evicted from the 
+     * cache are dropped as well, since their super-types are not known anymore.
+     * <p>
+     * Types missing so far are looked up again; types invalidated once are 
+     * never taken from the snapshot.
+     * <p>
+     * Only this layer (and its views) is updated, layers created on top of 
+     * it should be invalidated as well. Queries about the affected types that 
+     * run concurrently with the invalidation may still see the previous version, 
+     * but their results are not cached.
+     * 
+     * @param internalNames internal names of classes and interfaces
+     */
+    public void invalidate(Collection<String> internalNames) {
+        Set<String> names = new HashSet<String>(internalNames);
+        for (TypeInfo ti : SPECIAL_CLASSES) {
+            // Built-ins are never loaded
+            names.remove(ti.name);
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        List<String> known = new ArrayList<String>(names.size());
+        for (String name : names) {
+            reloadedTypes.add(name);
+            boolean missing = null != missingTypes.remove(name);
+            if (missing || typesCache.contains(name) || null != subTypes && subTypes.isRegistered(name)) {
+                known.add(name);
+            }
+        }
+        if (null == subTypes) {
+            // Evicted types are not known, but their lookups may depend on any of names
+            invalidateLoaded(names);
+            return;
+        }
+        if (known.isEmpty()) {
+            // Nothing depends on types that were never resolved
+            return;
+        }
+        // Sub-types are linked to the previous versions and 
+        // lookups of sub-types depend on them, evicted or not
+        Set<String> affected = subTypes.closure(known);
+        BitSet ids = new BitSet();
+        for (String type : affected) {
+            // Cancels in-flight loads as well
+            typesCache.remove(type);
+            // Edges are registered again when the type is reloaded
+            subTypes.unregister(type);
+            ids.set(symbols.idOf(type));
+        }
+        lookupCache.removeAll(ids);
+    }
+    
+    /**
+     * Invalidation without indexes: sub-types are found among the loaded 
+     * types and all cached lookups are scanned. Lookups are retained only 
+     * for unaffected types with resolved ancestors: all super-types of 
+     * such types are referenced, so they are loaded, while the lookups of 
+     * evicted types (or of their reloaded versions) may depend on anything.
+     */
+    private void invalidateLoaded(Set<String> names) {
+        List<TypeInfo> loaded = typesCache.values();
+        Map<String, List<TypeInfo>> dependents = new HashMap<String, List<TypeInfo>>();
+        for (TypeInfo ti : loaded) {
+            if (!ti.isOwnedBy(this)) {
+                // Inherited types depend on types of the parent only
+                continue;
+            }
+            for (String superName : ti.superTypeNames()) {
+                List<TypeInfo> direct = dependents.get(superName);
+                if (null == direct) {
+                    direct = new ArrayList<TypeInfo>();
+                    dependents.put(superName, direct);
+                }
+                direct.add(ti);
+            }
+        }
+        Set<String> affected = new HashSet<String>(names);
+        Queue<String> queue = new LinkedList<String>(names);
+        String type;
+        while (null != (type = queue.poll())) {
+            List<TypeInfo> direct = dependents.get(type);
+            if (null == direct) {
+                continue;
+            }
+            for (TypeInfo ti : direct) {
+                if (affected.add(ti.name)) {
+                    queue.add(ti.name);
+                }
+            }
+        }
+        BitSet retained = new BitSet();
+        for (TypeInfo ti : loaded) {
+            if (null != ti.ancestors && !affected.contains(ti.name)) {
+                retained.set(symbols.idOf(ti.name));
+            }
+        }
+        for (String name : affected) {
+            // Cancels in-flight loads as well
+            typesCache.remove(name);
+        }
+        lookupCache.retainAll(retained);
+    }
+    
+    private String calculateCommonSuperClass(TypeInfo info1, TypeInfo info2) throws IOException {
+        if (info1.isSubclassOf(info2)) {
+            return info2.name;
+        }
+        if (info2.isSubclassOf(info1)) {
+            return info1.name;
+        }
+        // Generic (worst) case -- flattened hierarchies, 
+        // matching from the most specific to least specific
+        // against the ancestors index of the other type
+        TypeInfo[] supers1 = info1.flattenHierarchy();
+        Ancestors ancestors2 = info2.ancestors();
+        for (TypeInfo a : supers1) {
+            if (ancestors2.contains(a)) {
+                return a.name;
+            }
+        }
+        return OBJECT.name;
+    }
+    
+    /**
+     * Returns the future of the type with all its super-types loaded.
+     */
+    CompletableFuture<TypeInfo> getTypeInfoAsync(final String type, final Executor executor) {
+        String elementClass = elementClassOf(type);
+        if (type.charAt(0) == '[') {
+            // Arrays are built in-memory from the element type
+            CompletableFuture<?> element = null == elementClass ? 
+                CompletableFuture.completedFuture(null) : 
+                getTypeInfoAsync(elementClass, executor);
+            return element.thenApply(new Function<Object, TypeInfo>() {
+                public TypeInfo apply(Object ignore) {
+                    try {
+                        return getTypeInfo(type);
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
                     }
                 }
+            });
+        }
+        return typesCache.getAsync(type, typesLoader, monitor, executor).thenCompose(
+            new Function<TypeInfo, CompletableFuture<TypeInfo>>() {
+                public CompletableFuture<TypeInfo> apply(TypeInfo typeInfo) {
+                    return resolveSuperTypesAsync(typeInfo, executor);
+                }
             }
-            return OBJECT.name;
-        } catch (IOException e) {
-            throw new RuntimeException(e.toString());
+        );
+    }
+    
+    private CompletableFuture<TypeInfo> resolveSuperTypesAsync(final TypeInfo typeInfo, Executor executor) {
+        if (null != typeInfo.ancestors) {
+            // Resolved completely
+            return CompletableFuture.completedFuture(typeInfo);
+        }
+        String[] interfaceNames = typeInfo.interfaceNames;
+        List<CompletableFuture<TypeInfo>> superTypes = new ArrayList<CompletableFuture<TypeInfo>>(interfaceNames.length + 1);
+        if (null != typeInfo.superClassName) {
+            superTypes.add(getTypeInfoAsync(typeInfo.superClassName, executor));
+        }
+        for (String interfaceName : interfaceNames) {
+            superTypes.add(getTypeInfoAsync(interfaceName, executor));
         }
+        return CompletableFuture.allOf(superTypes.toArray(new CompletableFuture<?>[superTypes.size()])).thenApply(
+            new Function<Void, TypeInfo>() {
+                public TypeInfo apply(Void ignore) {
+                    try {
+                        // Super-types are loaded, no I/O here
+                        typeInfo.ancestors();
+                        return typeInfo;
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }
+            }
+        );
     }
     
     TypeInfo getTypeInfo(String type) throws IOException {
-        TypeInfo key = new TypeInfo(type, null, null, false);
-        synchronized (typesCache) {
-            Reference<TypeInfo> reference = typesCache.get(key); 
-            TypeInfo value = null != reference ? reference.get() : null;
-            if (null == value) {
-                value = loadTypeInfo(type);
-                // Same key & value
-                typesCache.put(value, new SoftReference<TypeInfo>(value)); 
+        return getTypeInfo(type, monitor);
+    }
+    
+    /**
+     * Returns the type, a load is reported to the monitor specified. 
+     * Types are shared by all views of the layer, so the monitor is passed 
+     * by the requesting view rather than taken from the one that created 
+     * the type.
+     */
+    TypeInfo getTypeInfo(String type, HierarchyMonitor monitor) throws IOException {
+        // No lock is held while loading: different types are loaded in parallel,
+        // concurrent requests for the same type wait for the single in-flight load.
+        // Loading a type recursively asks only for its array element type, 
+        // so there are no cycles between in-flight loads
+        return typesCache.get(type, typesLoader, monitor);
+    }
+    
+    /**
+     * Returns the type with all its super-types loaded, see {@link #getTypeInfo(String, HierarchyMonitor)}.
+     */
+    private TypeInfo resolveTypeInfo(String type, HierarchyMonitor monitor) throws IOException {
+        TypeInfo result = getTypeInfo(type, monitor);
+        result.ancestors(monitor);
+        return result;
+    }
+
+    /**
+     * Returns headers of all regular types currently held in the cache,
+     * sorted by name; built-in, primitive and array types are skipped.
+     */
+    List<ClassHeader> loadedTypes() {
+        Map<String, TypeInfo> types = new TreeMap<String, TypeInfo>();
+        for (TypeInfo ti : typesCache.values()) {
+            if (isPersistent(ti)) {
+                types.put(ti.name, ti);
             }
-            return value;
         }
+        return headersOf(types.values());
     }
-
+    
     /**
-     * Returns a ClassReader corresponding to the given class or interface.
+     * Returns headers of the types specified with all their super-types 
+     * loaded by this layer, sorted by name. Unlike {@link #loadedTypes()},
+     * the result does not depend on what the cache retains: types are 
+     * strongly referenced until all headers are built.
+     */
+    List<ClassHeader> loadedTypes(Collection<String> names) throws IOException {
+        Map<String, TypeInfo> types = new TreeMap<String, TypeInfo>();
+        Queue<TypeInfo> pending = new LinkedList<TypeInfo>();
+        for (String name : names) {
+            pending.add(getTypeInfo(name));
+        }
+        TypeInfo ti;
+        while (null != (ti = pending.poll())) {
+            if (!isPersistent(ti) || types.containsKey(ti.name)) {
+                continue;
+            }
+            types.put(ti.name, ti);
+            TypeInfo superClass = ti.superClass();
+            if (null != superClass) {
+                pending.add(superClass);
+            }
+            pending.addAll(Arrays.asList(ti.interfaces()));
+        }
+        return headersOf(types.values());
+    }
+    
+    private boolean isPersistent(TypeInfo ti) {
+        // Built-ins are anonymous or special sub-classes,
+        // types of parent layers are persisted with parents
+        return ti.getClass() == TypeInfo.class && ti.isOwnedBy(this);
+    }
+    
+    private static List<ClassHeader> headersOf(Collection<TypeInfo> types) {
+        List<ClassHeader> result = new ArrayList<ClassHeader>(types.size());
+        for (TypeInfo ti : types) {
+            result.add(new ClassHeader(ti.isInterface ? Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT : 0, 
+                                       ti.name, 
+                                       ti.superClassName(), 
+                                       ti.interfaceNames()));
+        }
+        return result;
+    }
+    
+    /**
+     * Fan-out of type loads: every type is loaded by a separate task,
+     * loaded types submit tasks for their direct super-types.
+     */
+    private class Preload {
+        private final Executor executor;
+        private final Set<String> submitted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        // Tasks in progress plus one for the submitting thread
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        private volatile Throwable failure;
+        
+        Preload(Executor executor) {
+            this.executor = executor;
+        }
+        
+        void submit(String type) {
+            final String name = elementClassOf(type);
+            if (null == name || !submitted.add(name)) {
+                return;
+            }
+            pending.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            load(name);
+                        } catch (Throwable ex) {
+                            failure = ex;
+                        } finally {
+                            release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                failure = ex;
+                release();
+            }
+        }
+        
+        void await() {
+            release();
+            done.join();
+            Throwable ex = failure;
+            if (ex instanceof IOException) {
+                throw new RuntimeException(ex.toString(), ex);
+            } else if (ex instanceof RuntimeException) {
+                throw (RuntimeException)ex;
+            } else if (ex instanceof Error) {
+                throw (Error)ex;
+            } else if (null != ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        private void load(String type) throws IOException {
+            TypeInfo typeInfo = getTypeInfo(type);
+            if (null != typeInfo.superClassName) {
+                submit(typeInfo.superClassName);
+            }
+            for (String interfaceName : typeInfo.interfaceNames) {
+                submit(interfaceName);
+            }
+        }
+        
+        private void release() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+    }
+    
+    /**
+     * Returns the type itself for classes and interfaces, the element class 
+     * for arrays of references and null for arrays of primitives.
+     */
+    private static String elementClassOf(String type) {
+        int dimensions = 0;
+        while (type.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0) {
+            return type;
+        }
+        return type.charAt(dimensions) == 'L' ? type.substring(dimensions + 1, type.length() - 1) : null;
+    }
+    
+    /**
+     * Returns a TypeInfo corresponding to the given class or interface.
      * 
      * @param type
      *            the internal name of a class or interface.
-     * @return the ClassReader corresponding to 'type'.
+     * @return the TypeInfo corresponding to 'type'.
      * @throws IOException
      *             if the bytecode of 'type' cannot be loaded.
      */
-    private TypeInfo loadTypeInfo(String type) throws IOException {
+    private TypeInfo loadTypeInfo(String type, HierarchyMonitor monitor) throws IOException {
         if (type.charAt(0) == '[') {
             String elementTypeName = type.substring(1);
             TypeInfo elementType;
             switch (elementTypeName.charAt(0)) {
                 case '[': 
-                    elementType = getTypeInfo(elementTypeName);
+                    elementType = getTypeInfo(elementTypeName, monitor);
                     break;
                 case 'Z': 
                     elementType = BOOLEAN;
@@ -208,24 +897,104 @@ public class ClassHierarchy {
                     elementType = DOUBLE;
                     break;
                 case 'L':
-                    elementType = getTypeInfo(elementTypeName.substring(1, elementTypeName.indexOf(';')));
+                    elementType = getTypeInfo(elementTypeName.substring(1, elementTypeName.indexOf(';')), monitor);
                     break;
                 default:
                     throw new IOException("Unknown element type " + elementTypeName);
                 
             }
-            return new ArrayTypeInfo(type, elementType);
+            if (null != parent && !elementType.isOwnedBy(this)) {
+                // Arrays of inherited types are inherited as well
+                return parent.getTypeInfo(type, monitor);
+            }
+            return indexed(new ArrayTypeInfo(type, elementType));
         } else {
-            InputStream is = loader.getResourceAsStream(type + ".class");
-            try {
-                ClassReader info = new ClassReader(is);
-                return new TypeInfo(info.getClassName(), 
-                                    info.getSuperName(), 
-                                    info.getInterfaces(),
-                                    (info.getAccess() & Opcodes.ACC_INTERFACE) != 0);            
-            } finally {
-                is.close();
+            if (null != parent && !loader.hasResource(type + ".class")) {
+                // Child first: types that this layer doesn't have are inherited
+                return parent.getTypeInfo(type, monitor);
+            }
+            MissingType missing = missingTypes.get(type);
+            if (null != missing) {
+                // Known to be absent, no I/O
+                return missing.resolve();
+            }
+            Object context = null == monitor ? null : monitor.started(HierarchyMonitor.Operation.TYPE_LOAD);
+            long start = null == monitor ? 0L : System.nanoTime();
+            ClassHeader info = null == snapshot || reloadedTypes.contains(type) ? 
+                               null : snapshot.lookup(type, loader);
+            if (null == info) {
+                // Only the header is necessary, fields, methods 
+                // and attributes are not read at all
+                try {
+                    info = ResourceLoaders.readClassHeader(loader, type);
+                } catch (IOException ex) {
+                    if (loader.hasResource(type + ".class")) {
+                        // Present but unreadable, the error may be transient, 
+                        // so it's not cached
+                        throw ex;
+                    }
+                    return resolveMissingType(type, ex);
+                }
+            }
+            if (null != monitor) {
+                monitor.typeLoaded(context, type, System.nanoTime() - start);
+            }
+            TypeInfo result = new TypeInfo(info.getClassName(), 
+                                           info.getSuperName(), 
+                                           info.interfaces(),
+                                           info.isInterface());
+            return indexed(result);
+        }
+    }
+    
+    /**
+     * Registers the type as a dependent of its super-types in the 
+     * reverse index used by {@link #invalidate(Collection)}, if any.
+     */
+    private TypeInfo indexed(TypeInfo type) {
+        if (null != subTypes) {
+            subTypes.register(type.name, type.superTypeNames());
+        }
+        return type;
+    }
+    
+    private TypeInfo resolveMissingType(String type, IOException cause) {
+        // Loads of the same type never run concurrently (see TypeCache),
+        // so the policy is asked once
+        MissingType missing;
+        try {
+            ClassHeader substitute = unresolvedTypePolicy.resolve(type, cause);
+            if (null == substitute || !type.equals(substitute.getClassName())) {
+                throw new IllegalStateException("Invalid substitute for the missing type " + type + ": " + substitute);
             }
+            TypeInfo substituteInfo = new UnresolvedTypeInfo(substitute);
+            indexed(substituteInfo);
+            missing = new MissingType(substituteInfo, null);
+        } catch (IOException ex) {
+            missing = new MissingType(null, new UnresolvedTypeException(type, ex));
+        }
+        MissingType previous = missingTypes.putIfAbsent(type, missing);
+        return (null == previous ? missing : previous).resolve();
+    }
+    
+    /**
+     * Outcome of the {@link UnresolvedTypePolicy} for the missing type:
+     * either the substitute or the failure.
+     */
+    static final class MissingType {
+        private final TypeInfo substitute;
+        private final UnresolvedTypeException failure;
+        
+        MissingType(TypeInfo substitute, UnresolvedTypeException failure) {
+            this.substitute = substitute;
+            this.failure = failure;
+        }
+        
+        TypeInfo resolve() {
+            if (null != failure) {
+                throw failure;
+            }
+            return substitute;
         }
     }
     
@@ -233,11 +1002,21 @@ public class ClassHierarchy {
         final String name;
         final boolean isInterface;
         
-        private String superClassName;
-        private TypeInfo superClass;
+        // Names are immutable, links are resolved lazily without locks: 
+        // getTypeInfo returns the same instance for concurrent resolutions, 
+        // so racing threads publish equal values
+        private final String superClassName;
+        private volatile TypeInfo superClass;
+        
+        private final String[] interfaceNames;
+        private volatile TypeInfo[] interfaces;
         
-        private String[] interfaceNames;
-        private TypeInfo[] interfaces;
+        private volatile Ancestors ancestors;
+        private volatile TypeInfo[] flattened;
+        // Ordering weight of interfaces, see strength()
+        private volatile long strength = -1;
+        // Assigned to interfaces on first use, see INTERFACE_ORDINAL
+        volatile int interfaceOrdinal = -1;
         
         TypeInfo(String name, String superClassName, String[] interfaceNames, boolean isInterface) {
             this.name = name;
@@ -246,88 +1025,150 @@ public class ClassHierarchy {
             this.interfaceNames = null != interfaceNames ? interfaceNames : EMPTY_STRINGS;
         }
         
-        synchronized TypeInfo superClass() throws IOException {
-            if (null != superClassName) {
+        final TypeInfo superClass() throws IOException {
+            return superClass(null);
+        }
+        
+        /**
+         * Returns the super-class, a load is reported to the monitor of 
+         * the requesting view, see {@link ClassHierarchy#getTypeInfo(String, HierarchyMonitor)}.
+         */
+        TypeInfo superClass(HierarchyMonitor monitor) throws IOException {
+            TypeInfo result = superClass;
+            if (null == result && null != superClassName) {
                 // Not loaded yet
-                superClass = getTypeInfo(superClassName);
-                superClassName = null;
+                result = getTypeInfo(superClassName, monitor);
+                superClass = result;
             }
-            return superClass;
+            return result;
         }
         
-        synchronized TypeInfo[] interfaces() throws IOException {
-            if (null != interfaceNames) {
-                // Not loaded yet
+        final TypeInfo[] interfaces() throws IOException {
+            return interfaces(null);
+        }
+        
+        TypeInfo[] interfaces(HierarchyMonitor monitor) throws IOException {
+            TypeInfo[] result = interfaces;
+            if (null == result) {
+                // Not loaded yet, the array is filled before it is published
                 int size = interfaceNames.length;
                 if (size == 0) {
-                    interfaces = EMPTY_TYPE_INFOS;
+                    result = EMPTY_TYPE_INFOS;
                 } else {
-                    interfaces = new TypeInfo[size];
+                    result = new TypeInfo[size];
                     for (int i = size - 1; i >= 0; i--) {
-                        interfaces[i] = getTypeInfo(interfaceNames[i]);
+                        result[i] = getTypeInfo(interfaceNames[i], monitor);
                     }
                 }
-                interfaceNames = null;
+                interfaces = result;
+            }
+            return result;
+        }
+        
+        String superClassName() {
+            return superClassName;
+        }
+        
+        /**
+         * Whether the type is loaded by the layer of the hierarchy specified,
+         * views of the same layer share the types cache.
+         */
+        boolean isOwnedBy(ClassHierarchy hierarchy) {
+            return typesCache == hierarchy.typesCache;
+        }
+        
+        String[] interfaceNames() {
+            return interfaceNames.clone();
+        }
+        
+        /**
+         * Names of the types this one depends on: direct super-types, 
+         * or the element type of arrays.
+         */
+        String[] superTypeNames() {
+            if (null == superClassName) {
+                return interfaceNames.clone();
             }
-            return interfaces;
+            String[] result = new String[interfaceNames.length + 1];
+            result[0] = superClassName;
+            System.arraycopy(interfaceNames, 0, result, 1, interfaceNames.length);
+            return result;
         }
         
         boolean isSubclassOf(TypeInfo base) throws IOException {
-            String targetName = base.name;
-            // Check names first to avoid loading hierarchy
-            if (name.equals(targetName)) {
+            if (this == base || name.equals(base.name)) {
                 return true;
             }
-            synchronized (this) {
-                if ((!base.isInterface) && 
-                    null != superClassName && 
-                    superClassName.equals(targetName)) {
-                    return true;
-                }
-                if (base.isInterface && null != interfaceNames) {
-                    for (int i = interfaceNames.length - 1; i >= 0; i--) {
-                        if (interfaceNames[i].equals(targetName)) {
-                            return true;
-                        }
-                    }
-                }
+            return ancestors().contains(base);
+        }
+        
+        /**
+         * Returns the ancestors index of this type, all super-types 
+         * are loaded on the first call.
+         */
+        final Ancestors ancestors() throws IOException {
+            return ancestors(null);
+        }
+        
+        /**
+         * Same as {@link #ancestors()}, loads are reported to the monitor specified.
+         */
+        Ancestors ancestors(HierarchyMonitor monitor) throws IOException {
+            Ancestors result = ancestors;
+            if (null == result) {
+                // Racy, but calculation is idempotent and the result is immutable
+                result = new Ancestors(this, monitor);
+                ancestors = result;
             }
-            TypeInfo t = superClass();
-            if (null != t && t.isSubclassOf(base)) {
-                return true;
+            return result;
+        }
+        
+        int interfaceOrdinal() {
+            int result = interfaceOrdinal;
+            if (result < 0) {
+                int candidate = interfaceOrdinals.getAndIncrement();
+                result = INTERFACE_ORDINAL.compareAndSet(this, -1, candidate) ? candidate : interfaceOrdinal;
             }
-            // If base is interface then check interfaces
-            if (base.isInterface) {
-                TypeInfo[] tt = interfaces();
-                for (int i = tt.length - 1; i >= 0; i--) {
-                    if (tt[i].isSubclassOf(base)) {
-                        return true;
-                    }
-                }
+            return result;
+        }
+        
+        /**
+         * Returns all super-types ordered from the most specific to the least 
+         * specific one: super-classes, then interfaces, then <code>java/lang/Object</code>.
+         * The array is calculated once and must not be modified.
+         */
+        final TypeInfo[] flattenHierarchy() throws IOException {
+            TypeInfo[] result = flattened;
+            if (null == result) {
+                // Racy, but calculation is idempotent
+                result = calculateFlattenHierarchy();
+                flattened = result;
             }
-            return false;            
+            return result;
         }
         
-        List<TypeInfo> flattenHierarchy() throws IOException {
+        TypeInfo[] calculateFlattenHierarchy() throws IOException {
             Queue<TypeInfo> superclasses = new LinkedList<TypeInfo>();
             SortedSet<InterfaceEntry> interfaces = new TreeSet<InterfaceEntry>(); 
             flattenHierarchy(superclasses, interfaces, new HashSet<String>(), 0);
             
-            List<TypeInfo> result = new ArrayList<TypeInfo>(superclasses.size() + 
-                                                            interfaces.size() +
-                                                            1);
-            result.addAll(superclasses);
-            result.addAll(narrow(interfaces));
-            result.add(OBJECT);
+            TypeInfo[] result = new TypeInfo[superclasses.size() + interfaces.size() + 1];
+            int idx = 0;
+            for (TypeInfo superclass : superclasses) {
+                result[idx++] = superclass;
+            }
+            for (InterfaceEntry ie : interfaces) {
+                result[idx++] = ie.typeInfo;
+            }
+            result[idx] = OBJECT;
             return result;
         }
         
-        int flattenHierarchy(Queue<TypeInfo> superclasses, 
-                             SortedSet<InterfaceEntry> interfaces,
-                             Set<String> ivisited,
-                             int depth) throws IOException {
+        void flattenHierarchy(Queue<TypeInfo> superclasses, 
+                              SortedSet<InterfaceEntry> interfaces,
+                              Set<String> ivisited,
+                              int depth) throws IOException {
             
-            int strength = initialStrength();
             if (!isInterface) {
                 superclasses.add(this);
             }
@@ -341,21 +1182,42 @@ public class ClassHierarchy {
             int size = itypes.length;
             for (int i = size - 1; i >= 0; i--) {
                 TypeInfo itype = itypes[i];
-                // From bottom to top, so append children
-                strength += itype.flattenHierarchy(null, interfaces, ivisited, depth + 1);
+                // From bottom to top, so append children.
+                // Super-interfaces of the visited interface are visited as well,
+                // so every interface is walked once, diamonds are not re-walked
+                if (!ivisited.contains(itype.name)) {
+                    itype.flattenHierarchy(null, interfaces, ivisited, depth + 1);
+                }
             }
             
-            if (isInterface) {
-                if (!ivisited.contains(name)) {
-                    // skip if re-implemented on higher level
-                    // and first appears on lower (base) level
-                    interfaces.add(new InterfaceEntry(this, strength, depth));
-                    ivisited.add(name);
+            if (isInterface && !ivisited.contains(name)) {
+                // skip if re-implemented on higher level
+                // and first appears on lower (base) level
+                interfaces.add(new InterfaceEntry(this, strength(), depth));
+                ivisited.add(name);
+            }
+        }
+        
+        /**
+         * The number of paths from the interface to its super-interfaces 
+         * (including itself), so sub-interfaces are always stronger than their 
+         * super-interfaces. Saturated rather than overflown for lattices with 
+         * a lot of diamonds. Calculated once, 0 for classes.
+         */
+        long strength() throws IOException {
+            long result = strength;
+            if (result < 0) {
+                // Racy, but calculation is idempotent
+                result = initialStrength();
+                if (isInterface) {
+                    for (TypeInfo itype : interfaces()) {
+                        long next = result + itype.strength();
+                        result = next < 0 ? Long.MAX_VALUE : next;
+                    }
                 }
-                return strength;
-            } else {
-                return 0;
+                strength = result;
             }
+            return result;
         }
         
         int initialStrength() {
@@ -387,12 +1249,12 @@ public class ClassHierarchy {
     
     private final TypeInfo OBJECT = new TypeInfo("java/lang/Object", null, null, false) {
         @Override
-        TypeInfo superClass() {
+        TypeInfo superClass(HierarchyMonitor monitor) {
             return null;
         }
         
         @Override
-        TypeInfo[] interfaces() {
+        TypeInfo[] interfaces(HierarchyMonitor monitor) {
             return EMPTY_TYPE_INFOS;
         }
         
@@ -402,28 +1264,36 @@ public class ClassHierarchy {
         }
         
         @Override
-        List<TypeInfo> flattenHierarchy() {
-            return Collections.<TypeInfo>singletonList(this);
+        TypeInfo[] calculateFlattenHierarchy() {
+            return new TypeInfo[] {this};
         }
         
         @Override
-        int flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
-            return 0;
+        void flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
         }
     };
     
+    /**
+     * The substitute of the missing type, never persisted in snapshots.
+     */
+    class UnresolvedTypeInfo extends TypeInfo {
+        UnresolvedTypeInfo(ClassHeader header) {
+            super(header.getClassName(), header.getSuperName(), header.interfaces(), header.isInterface());
+        }
+    }
+    
     class PrimitiveTypeInfo extends TypeInfo {
         PrimitiveTypeInfo(String name) {
             super(name, null, null, false);
         }
         
         @Override
-        TypeInfo superClass() {
+        TypeInfo superClass(HierarchyMonitor monitor) {
             return null;
         }
         
         @Override
-        TypeInfo[] interfaces() {
+        TypeInfo[] interfaces(HierarchyMonitor monitor) {
             return EMPTY_TYPE_INFOS;
         }
         
@@ -433,13 +1303,12 @@ public class ClassHierarchy {
         }
         
         @Override
-        List<TypeInfo> flattenHierarchy() {
-            return Collections.<TypeInfo>singletonList(this);
+        TypeInfo[] calculateFlattenHierarchy() {
+            return new TypeInfo[] {this};
         }
         
         @Override
-        int flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
-            return 0;
+        void flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
         }   
         
         @Override
@@ -457,15 +1326,27 @@ public class ClassHierarchy {
         }
         
         @Override
-        TypeInfo superClass() {
+        TypeInfo superClass(HierarchyMonitor monitor) {
             return OBJECT;
         }
         
         @Override
-        TypeInfo[] interfaces() {
+        TypeInfo[] interfaces(HierarchyMonitor monitor) {
             return EMPTY_TYPE_INFOS;
         }
         
+        @Override
+        String[] superTypeNames() {
+            return new String[] {elementType.name};
+        }
+        
+        @Override
+        Ancestors ancestors(HierarchyMonitor monitor) throws IOException {
+            // Sub-typing of arrays is the sub-typing of elements
+            elementType.ancestors(monitor);
+            return super.ancestors(monitor);
+        }
+        
         @Override
         boolean isSubclassOf(TypeInfo base) throws IOException {
             return this.equals(base)   || 
@@ -474,13 +1355,12 @@ public class ClassHierarchy {
         }
         
         @Override
-        List<TypeInfo> flattenHierarchy() {
-            return Arrays.asList(this, OBJECT);
+        TypeInfo[] calculateFlattenHierarchy() {
+            return new TypeInfo[] {this, OBJECT};
         }
         
         @Override
-        int flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
-            return 0;
+        void flattenHierarchy(Queue<TypeInfo> s, SortedSet<InterfaceEntry> i, Set<String> v, int d) {
         }   
         
         @Override
@@ -510,7 +1390,7 @@ public class ClassHierarchy {
         }
         
         @Override
-        TypeInfo superClass() {
+        TypeInfo superClass(HierarchyMonitor monitor) {
             return null;
         }
         
@@ -520,21 +1400,104 @@ public class ClassHierarchy {
         }
     }
     
-    private static List<TypeInfo> narrow(SortedSet<InterfaceEntry> entries) {
-        int size = entries.size();
-        List<TypeInfo> result = new ArrayList<TypeInfo>(size);
-        for (InterfaceEntry ie : entries) {
-            result.add(ie.typeInfo);
+    /**
+     * Ancestors of the type: the "display" of super-classes where the 
+     * super-class at depth N (<code>java/lang/Object</code> is at depth 0) 
+     * is at index N, and the bitset of all implemented interfaces 
+     * by their ordinals. The bitset is stored from the first non-zero word only.
+     * Both sets are built from the sets of the direct super-types, 
+     * so the index grows incrementally as types are loaded.
+     */
+    static final class Ancestors {
+        private final TypeInfo[] classes;
+        private final int depth;
+        private final int firstWord;
+        private final long[] interfaces;
+        
+        Ancestors(TypeInfo type, HierarchyMonitor monitor) throws IOException {
+            TypeInfo superClass = type.superClass(monitor);
+            TypeInfo[] superClasses = null == superClass ? EMPTY_TYPE_INFOS : superClass.ancestors(monitor).classes;
+            if (type.isInterface) {
+                // Not a part of the classes tree
+                classes = superClasses;
+                depth = -1;
+            } else {
+                classes = Arrays.copyOf(superClasses, superClasses.length + 1);
+                classes[superClasses.length] = type;
+                depth = superClasses.length;
+            }
+            
+            BitSet bits = new BitSet();
+            if (null != superClass) {
+                superClass.ancestors(monitor).addInterfacesTo(bits);
+            }
+            for (TypeInfo superInterface : type.interfaces(monitor)) {
+                superInterface.ancestors(monitor).addInterfacesTo(bits);
+            }
+            if (type.isInterface) {
+                bits.set(type.interfaceOrdinal());
+            }
+            if (bits.isEmpty()) {
+                firstWord = 0;
+                interfaces = EMPTY_WORDS;
+            } else {
+                long[] words = bits.toLongArray();
+                int first = bits.nextSetBit(0) >>> 6;
+                firstWord = first;
+                interfaces = first == 0 ? words : Arrays.copyOfRange(words, first, words.length);
+            }
+        }
+        
+        /**
+         * Depth of the type in the classes tree, -1 for interfaces.
+         */
+        int depth() {
+            return depth;
+        }
+        
+        boolean hasClass(TypeInfo type, int depth) {
+            if (depth < 0 || depth >= classes.length) {
+                return false;
+            }
+            TypeInfo candidate = classes[depth];
+            // By identity, like interfaces by ordinals: a layer may shadow 
+            // the type of its parent with another version. The only class 
+            // at depth 0 is java/lang/Object, it's never shadowed, but
+            // views have their own instances
+            return candidate == type || 0 == depth && candidate.name.equals(type.name);
+        }
+        
+        boolean contains(TypeInfo type) throws IOException {
+            return type.isInterface ? 
+                   hasInterface(type.interfaceOrdinal()) : 
+                   hasClass(type, type.ancestors().depth());
+        }
+        
+        boolean hasInterface(int ordinal) {
+            int word = (ordinal >>> 6) - firstWord;
+            return word >= 0 && word < interfaces.length && (interfaces[word] & (1L << ordinal)) != 0;
+        }
+        
+        private void addInterfacesTo(BitSet bits) {
+            for (int i = interfaces.length - 1; i >= 0; i--) {
+                long word = interfaces[i];
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    bits.set(((firstWord + i) << 6) + bit);
+                    word &= word - 1;
+                }
+            }
         }
-        return result;
     }
     
+    private static final long[] EMPTY_WORDS = new long[0];
+    
     static class InterfaceEntry implements Comparable<InterfaceEntry> {
         final TypeInfo typeInfo;
-        final int strength;
+        final long strength;
         final int depth;
         
-        InterfaceEntry(TypeInfo typeInfo, int strength, int depth) {
+        InterfaceEntry(TypeInfo typeInfo, long strength, int depth) {
             this.typeInfo = typeInfo;
             this.strength = strength;
             this.depth    = depth;
@@ -542,11 +1505,10 @@ public class ClassHierarchy {
         
         @Override
         public int compareTo(InterfaceEntry other) {
-            int delta = other.strength - this.strength;
-            if (delta != 0) {
-                return delta;
+            if (this.strength != other.strength) {
+                return other.strength > this.strength ? 1 : -1;
             }
-            delta = this.depth - other.depth;
+            int delta = this.depth - other.depth;
             if (delta != 0) {
                 return delta;
             }
@@ -554,46 +1516,6 @@ public class ClassHierarchy {
         }
     }
     
-    static class Key extends SymmetricalPair<String> {
-        Key(String a, String b) {
-            super(a, b);
-        }
-    }
-    
-    static class SymmetricalPair<T> {
-        private final T a;
-        private final T b;
-        SymmetricalPair(T a, T b) {
-            this.a = a;
-            this.b = b;
-        }
-        
-        @Override 
-        public int hashCode() {
-            int hA = null == a ? 0 : a.hashCode();
-            int hB = null == b ? 0 : b.hashCode();
-            return Math.min(hA, hB) * 37 + Math.max(hA, hB);
-        }
-        
-        @Override
-        public boolean equals(Object other) {
-            if (other == this) {
-                return true;
-            }
-            if (other.getClass() != this.getClass()) {
-                return false;
-            }
-            @SuppressWarnings("unchecked")
-            SymmetricalPair<T> that = (SymmetricalPair<T>)other;
-            return same(this.a, that.a) && same(this.b, that.b) ||
-                   same(this.a, that.b) && same(this.b, that.a);  
-        }
-        
-        private static <T> boolean same(T a, T b) {
-            return a == null ? b == null : a.equals(b);
-        }
-    }
-    
     static final String[] EMPTY_STRINGS = new String[0];
     static final TypeInfo[] EMPTY_TYPE_INFOS = new TypeInfo[0];
 
@@ -0,0 +1,122 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded set of names with CLOCK (second chance) eviction.
+ * <p>
+ * Membership checks are lock-free lookups in the shared map that only 
+ * set the reference bit of the entry. Insertions are split into 
+ * independently locked segments by the hash of the name, every segment 
+ * owns a ring of its entries; when the ring is full, the hand sweeps it, 
+ * clears reference bits and replaces the first entry not referenced since 
+ * the previous sweep. So a full set evicts one cold entry at a time rather 
+ * than dropping every entry, the hot ones included.
+ */
+final class ClockSet {
+    private static final int SEGMENT_COUNT = 16;
+    
+    private final ConcurrentMap<String, Entry> entries;
+    private final Segment[] segments;
+    
+    ClockSet(int capacity) {
+        int segmentCapacity = Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        entries = new ConcurrentHashMap<String, Entry>();
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+    
+    boolean contains(String name) {
+        Entry entry = entries.get(name);
+        if (null == entry) {
+            return false;
+        }
+        if (!entry.referenced) {
+            // Avoid writing the shared cache line on every hit
+            entry.referenced = true;
+        }
+        return true;
+    }
+    
+    void add(String name) {
+        int hash = name.hashCode();
+        segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)].add(name, entries);
+    }
+    
+    int size() {
+        return entries.size();
+    }
+    
+    static final class Entry {
+        final String name;
+        volatile boolean referenced;
+        
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+    
+    static final class Segment {
+        private final Entry[] ring;
+        private int size;
+        private int hand;
+        
+        Segment(int capacity) {
+            ring = new Entry[capacity];
+        }
+        
+        synchronized void add(String name, ConcurrentMap<String, Entry> entries) {
+            if (entries.containsKey(name)) {
+                return;
+            }
+            Entry entry = new Entry(name);
+            if (size < ring.length) {
+                ring[size++] = entry;
+            } else {
+                // Terminates within two sweeps: the first one clears all bits
+                while (ring[hand].referenced) {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % ring.length;
+                }
+                entries.remove(ring[hand].name);
+                ring[hand] = entry;
+                hand = (hand + 1) % ring.length;
+            }
+            entries.put(name, entry);
+        }
+    }
+}
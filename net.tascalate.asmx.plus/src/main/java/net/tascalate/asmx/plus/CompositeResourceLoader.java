@@ -0,0 +1,220 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link ResourceLoader} that chains several loaders (a class path), 
+ * the first element that has a resource wins.
+ * <p>
+ * Instead of probing every element in turn, lookups are routed by package: 
+ * elements that implement {@link IndexedResourceLoader} are asked for their 
+ * packages, lazily, when a lookup reaches the element for the first time. 
+ * The resulting route (the elements that own the package) is cached per 
+ * package, so a lookup usually goes straight to the single owner. Elements 
+ * that can't list their packages are probed with 
+ * {@link ResourceLoader#hasResource(String)} for every package. 
+ * <p>
+ * Names that exist nowhere are kept in a bounded negative cache that evicts 
+ * the names not checked recently (CLOCK). The list of elements is fixed, 
+ * and elements are expected to be immutable.
+ */
+public class CompositeResourceLoader implements ByteBufferResourceLoader, StampedResourceLoader {
+    private static final int MAX_MISSING_NAMES = 16384;
+    
+    private final ResourceLoader[] elements;
+    private final AtomicReferenceArray<Set<String>> elementPackages;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final ClockSet missingNames = new ClockSet(MAX_MISSING_NAMES);
+    
+    public CompositeResourceLoader(ResourceLoader... elements) {
+        this.elements = elements.clone();
+        this.elementPackages = new AtomicReferenceArray<Set<String>>(elements.length);
+    }
+    
+    public CompositeResourceLoader(List<? extends ResourceLoader> elements) {
+        this(elements.toArray(new ResourceLoader[elements.size()]));
+    }
+    
+    public List<ResourceLoader> elements() {
+        return Arrays.asList(elements.clone());
+    }
+    
+    public boolean hasResource(String name) {
+        try {
+            return null != find(name, true);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        return existing(name).getResourceAsStream(name);
+    }
+    
+    public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+        return ResourceLoaders.getResourceAsBuffer(existing(name), name);
+    }
+    
+    public long getResourceStamp(String name) throws IOException {
+        ResourceLoader element = existing(name);
+        if (element instanceof StampedResourceLoader) {
+            return ((StampedResourceLoader)element).getResourceStamp(name);
+        } else {
+            return NO_STAMP;
+        }
+    }
+    
+    private ResourceLoader existing(String name) throws IOException {
+        ResourceLoader result = find(name, false);
+        if (null == result) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        return result;
+    }
+    
+    private ResourceLoader find(String name, boolean verify) throws IOException {
+        if (missingNames.contains(name)) {
+            return null;
+        }
+        int idx = name.lastIndexOf('/');
+        String packageName = idx < 0 ? "" : name.substring(0, idx);
+        
+        Route route = routes.get(packageName);
+        if (null == route) {
+            route = Route.EMPTY;
+        }
+        if (isDirect(route)) {
+            // The only element that owns the package, the resource
+            // is loaded from there or doesn't exist at all
+            ResourceLoader owner = elements[route.owners[0]];
+            return !verify || owner.hasResource(name) ? owner : null;
+        }
+        int[] owners = route.owners;
+        int size = owners.length;
+        for (int i = 0; i < size; i++) {
+            ResourceLoader owner = elements[owners[i]];
+            if (owner.hasResource(name)) {
+                return owner;
+            }
+        }
+        // Extend the route to the elements that were not scanned yet
+        while (route.scanned < elements.length) {
+            int next = route.scanned;
+            // Null when the element can't list its packages
+            Set<String> packages = packagesOf(next);
+            boolean probed = null == packages;
+            Route extended = probed || packages.contains(packageName) ? 
+                             route.extend(next, probed) : route.skip(); 
+            route = publish(packageName, route, extended);
+            if (route.owners.length > size) {
+                ResourceLoader owner = elements[next];
+                if (isDirect(route) && !verify || owner.hasResource(name)) {
+                    return owner;
+                }
+                size = route.owners.length;
+            }
+        }
+        missingNames.add(name);
+        return null;
+    }
+    
+    private boolean isDirect(Route route) {
+        return route.owners.length == 1 && route.scanned == elements.length && !route.probed;
+    }
+    
+    private Route publish(String packageName, Route expected, Route update) {
+        // Racing threads compute the same route, 
+        // so it's ok to lose the race silently
+        if (expected == Route.EMPTY) {
+            routes.putIfAbsent(packageName, update);
+        } else {
+            routes.replace(packageName, expected, update);
+        }
+        return update;
+    }
+    
+    private Set<String> packagesOf(int index) throws IOException {
+        ResourceLoader element = elements[index];
+        if (!(element instanceof IndexedResourceLoader)) {
+            return null;
+        }
+        Set<String> result = elementPackages.get(index);
+        if (null == result) {
+            result = ((IndexedResourceLoader)element).getPackageNames();
+            elementPackages.compareAndSet(index, null, result);
+        }
+        return result;
+    }
+    
+    static final class Route {
+        static final Route EMPTY = new Route(new int[0], 0, false);
+        
+        // Indexes of the elements that own (or may own) the package
+        final int[] owners;
+        // Number of elements that were checked
+        final int scanned;
+        // Whether some owner is not indexed, i.e. has to be probed
+        final boolean probed;
+        
+        private Route(int[] owners, int scanned, boolean probed) {
+            this.owners = owners;
+            this.scanned = scanned;
+            this.probed = probed;
+        }
+        
+        Route extend(int owner, boolean probedOwner) {
+            int[] newOwners = Arrays.copyOf(owners, owners.length + 1);
+            newOwners[owners.length] = owner;
+            return new Route(newOwners, owner + 1, probed || probedOwner);
+        }
+        
+        Route skip() {
+            return new Route(owners, scanned + 1, probed);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + Arrays.toString(elements);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emits JDK Flight Recorder events for operations that are slower than 
+ * the threshold. This is the only class that refers to <code>jdk.jfr</code>, 
+ * it's never loaded unless {@link HierarchyMonitors#isFlightRecorderAvailable()}.
+ * <p>
+ * The event is begun when the operation is {@link #started(Operation) started} 
+ * and ended when it completes, so its duration is the one of the operation 
+ * and the <code>enabled</code> and <code>threshold</code> settings of the 
+ * recording take effect via {@link Event#shouldCommit()}.
+ */
+final class FlightRecorderMonitor implements HierarchyMonitor {
+    private final long thresholdNanos;
+    
+    FlightRecorderMonitor(long thresholdNanos) {
+        this.thresholdNanos = thresholdNanos;
+    }
+    
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+    
+    @Override
+    public Object started(Operation operation) {
+        Event event;
+        switch (operation) {
+            case LOOKUP:
+                event = new LookupEvent();
+                break;
+            case TYPE_LOAD:
+                event = new TypeLoadEvent();
+                break;
+            case RESOURCE_READ:
+                event = new ResourceReadEvent();
+                break;
+            case LOCK_WAIT:
+                event = new LockWaitEvent();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+    
+    public void lookupCompleted(Object context, String type1, String type2, boolean hit, long nanos) {
+        LookupEvent event = (LookupEvent)context;
+        if (shouldCommit(event, nanos)) {
+            event.type1 = type1;
+            event.type2 = type2;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+    
+    public void typeLoaded(Object context, String type, long nanos) {
+        TypeLoadEvent event = (TypeLoadEvent)context;
+        if (shouldCommit(event, nanos)) {
+            event.type = type;
+            event.commit();
+        }
+    }
+    
+    public void resourceRead(Object context, ResourceLoader loader, String name, long bytes, long nanos) {
+        ResourceReadEvent event = (ResourceReadEvent)context;
+        if (shouldCommit(event, nanos)) {
+            event.loader = loader.getClass().getName();
+            event.resource = name;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+    
+    public void lockWaited(Object context, long nanos) {
+        LockWaitEvent event = (LockWaitEvent)context;
+        if (shouldCommit(event, nanos)) {
+            event.commit();
+        }
+    }
+    
+    private boolean shouldCommit(Event event, long nanos) {
+        if (null == event) {
+            // Disabled when the operation started
+            return false;
+        }
+        event.end();
+        return nanos >= thresholdNanos && event.shouldCommit();
+    }
+    
+    @Name("net.tascalate.asmx.Lookup")
+    @Label("Common Super-Class Lookup")
+    @Category({"Tascalate ASMX", "Class Hierarchy"})
+    @Description("Slow calculation of the common super-class of two types")
+    static final class LookupEvent extends Event {
+        @Label("First Type")
+        String type1;
+        
+        @Label("Second Type")
+        String type2;
+        
+        @Label("Cache Hit")
+        boolean hit;
+    }
+    
+    @Name("net.tascalate.asmx.TypeLoad")
+    @Label("Type Load")
+    @Category({"Tascalate ASMX", "Class Hierarchy"})
+    @Description("Slow load of the class header")
+    static final class TypeLoadEvent extends Event {
+        @Label("Type")
+        String type;
+    }
+    
+    @Name("net.tascalate.asmx.ResourceRead")
+    @Label("Resource Read")
+    @Category({"Tascalate ASMX", "Resource Loader"})
+    @Description("Slow read of the resource by the monitored loader")
+    static final class ResourceReadEvent extends Event {
+        @Label("Loader Class")
+        String loader;
+        
+        @Label("Resource")
+        String resource;
+        
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+    }
+    
+    @Name("net.tascalate.asmx.LockWait")
+    @Label("Lock Wait")
+    @Category({"Tascalate ASMX", "Class Hierarchy"})
+    @Description("Wait for the load of the type by another thread or for the lock of the lookup cache")
+    static final class LockWaitEvent extends Event {
+    }
+}
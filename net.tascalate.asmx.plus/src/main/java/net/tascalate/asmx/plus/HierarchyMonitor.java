@@ -0,0 +1,114 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+/**
+ * Receives measurements of {@link ClassHierarchy} lookups and resource loads.
+ * <p>
+ * The monitor is attached with {@link ClassHierarchy#withMonitor(HierarchyMonitor)} 
+ * and {@link HierarchyMonitors#monitored(ResourceLoader, HierarchyMonitor)}; 
+ * without a monitor nothing is measured at all. Methods are invoked 
+ * synchronously by the threads doing the work, so implementations must 
+ * be thread-safe and fast.
+ * <p>
+ * Every operation is announced with {@link #started(Operation)} right before 
+ * it starts; the object returned is passed back as the <code>context</code> 
+ * of the callback that reports the completion. Operations that fail are not 
+ * reported, their context is just dropped.
+ * 
+ * @see HierarchyStatistics
+ * @see HierarchyMonitors
+ */
+public interface HierarchyMonitor {
+    
+    /**
+     * The kinds of measured operations.
+     */
+    enum Operation {
+        LOOKUP, TYPE_LOAD, RESOURCE_READ, LOCK_WAIT
+    }
+    
+    /**
+     * Called right before the operation starts. Monitors that time operations 
+     * on their own, like the {@link HierarchyMonitors#flightRecorder(long, java.util.concurrent.TimeUnit) 
+     * Flight Recorder} one, start the timing here. The default implementation 
+     * returns null.
+     * 
+     * @param operation the kind of the operation
+     * @return the context of the operation, may be null
+     */
+    default Object started(Operation operation) {
+        return null;
+    }
+    
+    /**
+     * Called when the common super-class is returned.
+     * 
+     * @param context the result of {@link #started(Operation)}
+     * @param type1 the internal name of the first type 
+     * @param type2 the internal name of the second type
+     * @param hit whether the result is taken from the lookup cache, 
+     *        either of the hierarchy or of one of its parent layers
+     * @param nanos the time spent, including loading of types on a miss
+     */
+    void lookupCompleted(Object context, String type1, String type2, boolean hit, long nanos);
+    
+    /**
+     * Called when the header of the class or interface is loaded, either 
+     * from the snapshot or from the resource loader.
+     * 
+     * @param context the result of {@link #started(Operation)}
+     * @param type the internal name of the type
+     * @param nanos the time spent
+     */
+    void typeLoaded(Object context, String type, long nanos);
+    
+    /**
+     * Called when the resource is read completely by the monitored loader.
+     * 
+     * @param context the result of {@link #started(Operation)}
+     * @param loader the loader the resource is read from
+     * @param name the name of the resource
+     * @param bytes the number of bytes read
+     * @param nanos the time spent
+     */
+    void resourceRead(Object context, ResourceLoader loader, String name, long bytes, long nanos);
+    
+    /**
+     * Called when the thread was blocked by another one, i.e. waited
+     * for the load of the same type or for the lock of the lookup cache.
+     * 
+     * @param context the result of {@link #started(Operation)}
+     * @param nanos the time spent waiting
+     */
+    void lockWaited(Object context, long nanos);
+}
@@ -0,0 +1,139 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factories of {@link HierarchyMonitor}-s and monitored loaders.
+ */
+public final class HierarchyMonitors {
+    private HierarchyMonitors() {}
+    
+    /**
+     * Returns the loader that reports every resource read to the monitor, 
+     * attributed to the loader specified. 
+     * The {@link StampedResourceLoader} and {@link ByteBufferResourceLoader} 
+     * capabilities of the loader are preserved (and not added), 
+     * the {@link IndexedResourceLoader} one is not, so wrap a 
+     * {@link CompositeResourceLoader} as a whole rather than its elements.
+     * 
+     * @param loader the loader to monitor
+     * @param monitor the monitor, may be null
+     * @return the monitored loader or the loader itself when the monitor is null
+     */
+    public static ResourceLoader monitored(ResourceLoader loader, HierarchyMonitor monitor) {
+        if (null == monitor) {
+            return loader;
+        }
+        return MonitoredResourceLoader.of(loader, monitor);
+    }
+    
+    /**
+     * Returns the monitor that forwards all measurements to every monitor specified.
+     */
+    public static HierarchyMonitor compose(HierarchyMonitor... monitors) {
+        final HierarchyMonitor[] targets = monitors.clone();
+        return new HierarchyMonitor() {
+            @Override
+            public Object started(Operation operation) {
+                Object[] contexts = new Object[targets.length];
+                for (int i = 0; i < targets.length; i++) {
+                    contexts[i] = targets[i].started(operation);
+                }
+                return contexts;
+            }
+            
+            public void lookupCompleted(Object context, String type1, String type2, boolean hit, long nanos) {
+                Object[] contexts = (Object[])context;
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i].lookupCompleted(contexts[i], type1, type2, hit, nanos);
+                }
+            }
+            
+            public void typeLoaded(Object context, String type, long nanos) {
+                Object[] contexts = (Object[])context;
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i].typeLoaded(contexts[i], type, nanos);
+                }
+            }
+            
+            public void resourceRead(Object context, ResourceLoader loader, String name, long bytes, long nanos) {
+                Object[] contexts = (Object[])context;
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i].resourceRead(contexts[i], loader, name, bytes, nanos);
+                }
+            }
+            
+            public void lockWaited(Object context, long nanos) {
+                Object[] contexts = (Object[])context;
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i].lockWaited(contexts[i], nanos);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Tells whether JDK Flight Recorder is available at runtime.
+     */
+    public static boolean isFlightRecorderAvailable() {
+        try {
+            // The module jdk.jfr is an optional dependency
+            Class.forName("jdk.jfr.FlightRecorder", false, HierarchyMonitors.class.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            return false;
+        } catch (LinkageError ex) {
+            return false;
+        }
+        return FlightRecorderMonitor.isAvailable();
+    }
+    
+    /**
+     * Returns the monitor that emits JDK Flight Recorder events for slow 
+     * lookups, type loads, resource reads and lock waits. Events are named
+     * <code>net.tascalate.asmx.*</code> and are enabled by default; the 
+     * <code>enabled</code> and <code>threshold</code> settings of the recording 
+     * are respected, the threshold specified here is applied on top of them. 
+     * 
+     * @param threshold the minimal duration of the operation to record
+     * @param unit the unit of the threshold
+     * @return the monitor
+     * @throws UnsupportedOperationException if Flight Recorder is not available
+     */
+    public static HierarchyMonitor flightRecorder(long threshold, TimeUnit unit) {
+        if (!isFlightRecorderAvailable()) {
+            throw new UnsupportedOperationException("JDK Flight Recorder is not available");
+        }
+        return new FlightRecorderMonitor(unit.toNanos(threshold));
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, persistent image of the types loaded by a {@link ClassHierarchy}
+ * that lets a new hierarchy start warm instead of re-parsing class files.
+ * <p>
+ * The snapshot holds interned names, super class and interface references 
+ * and the interface flag of every type, plus an open-addressing hash index
+ * over type names. It is memory-mapped (or kept in a heap buffer) and decoded
+ * lazily, entry by entry, when a type is requested.
+ * <p>
+ * When the snapshot is written from a hierarchy whose loader is a 
+ * {@link StampedResourceLoader}, every entry records the resource stamp; 
+ * on use, the stamp is compared with the current one and stale entries 
+ * fall back to live loading. Snapshots written without stamps are trusted 
+ * as is, which is intended for read-only base layers like the JDK.
+ */
+public final class HierarchySnapshot {
+    private static final int MAGIC = 0x41534D48; // ASMH
+    private static final int VERSION = 1;
+    private static final int FLAG_STAMPED = 1;
+    private static final int HEADER_SIZE = 20;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ByteBuffer buffer;
+    private final boolean stamped;
+    private final int stringCount;
+    private final int entryCount;
+    private final int slotCount;
+    private final int slotsOffset;
+    // Lazily decoded names, racy initialization is safe for strings
+    private final String[] strings;
+    
+    private HierarchySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a class hierarchy snapshot");
+        }
+        int version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported class hierarchy snapshot version " + version);
+        }
+        stamped = (buffer.getShort(6) & FLAG_STAMPED) != 0;
+        stringCount = buffer.getInt(8);
+        entryCount = buffer.getInt(12);
+        slotCount = buffer.getInt(16);
+        slotsOffset = HEADER_SIZE + 4 * stringCount;
+        if (stringCount < 0 || entryCount < 0 || slotCount <= 0 || 
+            Integer.bitCount(slotCount) != 1 || 
+            (long)slotsOffset + 4L * slotCount > buffer.capacity()) {
+            throw new IOException("Corrupted class hierarchy snapshot");
+        }
+        strings = new String[stringCount];
+    }
+    
+    /**
+     * Memory-maps the snapshot file.
+     */
+    public static HierarchySnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new HierarchySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+    
+    public static HierarchySnapshot read(ByteBuffer buffer) throws IOException {
+        return new HierarchySnapshot(buffer.slice());
+    }
+    
+    public static HierarchySnapshot read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] bytes = new byte[8192];
+            int count;
+            while ((count = in.read(bytes)) > 0) {
+                out.write(bytes, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return new HierarchySnapshot(ByteBuffer.wrap(out.toByteArray()));
+    }
+    
+    public static void write(ClassHierarchy hierarchy, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(hierarchy, out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Writes all types that are currently loaded by the hierarchy.
+     * Loaded types are softly referenced, so the content depends on 
+     * memory pressure; use {@link #write(ClassHierarchy, Collection, OutputStream)}
+     * for reproducible snapshots.
+     */
+    public static void write(ClassHierarchy hierarchy, OutputStream out) throws IOException {
+        write(hierarchy, hierarchy.loadedTypes(), out);
+    }
+    
+    public static void write(ClassHierarchy hierarchy, Collection<String> types, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(hierarchy, types, out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Writes the types specified with all their super-types, the same 
+     * types produce the same content regardless of the state of the cache.
+     */
+    public static void write(ClassHierarchy hierarchy, Collection<String> types, OutputStream out) throws IOException {
+        write(hierarchy, hierarchy.loadedTypes(types), out);
+    }
+    
+    private static void write(ClassHierarchy hierarchy, List<ClassHeader> types, OutputStream out) throws IOException {
+        ResourceLoader loader = hierarchy.loader();
+        StampedResourceLoader stamps = loader instanceof StampedResourceLoader ? 
+                                       (StampedResourceLoader)loader : null;
+        long[] typeStamps = new long[types.size()];
+        if (null != stamps) {
+            for (int i = typeStamps.length - 1; i >= 0; i--) {
+                try {
+                    typeStamps[i] = stamps.getResourceStamp(types.get(i).getClassName() + ".class");
+                } catch (IOException ex) {
+                    // Entry without a stamp is never used
+                    typeStamps[i] = StampedResourceLoader.NO_STAMP;
+                }
+            }
+        }
+        write(types, typeStamps, null != stamps, out);
+    }
+    
+    static void write(List<ClassHeader> types, long[] typeStamps, boolean stamped, OutputStream out) throws IOException {
+        Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringData = new DataOutputStream(stringBytes);
+        
+        int entryCount = types.size();
+        int slotCount = 16;
+        while (slotCount < entryCount * 2) {
+            slotCount <<= 1;
+        }
+        
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entryData = new DataOutputStream(entryBytes);
+        int[] entryOffsets = new int[entryCount];
+        int[] entryHashes = new int[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            ClassHeader type = types.get(i);
+            entryOffsets[i] = entryData.size();
+            entryHashes[i] = type.getClassName().hashCode();
+            String[] interfaces = type.interfaces();
+            
+            entryData.writeInt(entryHashes[i]);
+            entryData.writeInt(intern(type.getClassName(), stringIndexes, stringData));
+            entryData.writeInt(null == type.getSuperName() ? -1 : intern(type.getSuperName(), stringIndexes, stringData));
+            entryData.writeInt(type.getAccess());
+            entryData.writeLong(typeStamps[i]);
+            entryData.writeInt(interfaces.length);
+            for (String name : interfaces) {
+                entryData.writeInt(intern(name, stringIndexes, stringData));
+            }
+        }
+        
+        int stringCount = stringIndexes.size();
+        int entriesOffset = HEADER_SIZE + 4 * stringCount + 4 * slotCount;
+        int stringsOffset = entriesOffset + entryData.size();
+        
+        DataOutputStream result = new DataOutputStream(out);
+        result.writeInt(MAGIC);
+        result.writeShort(VERSION);
+        result.writeShort(stamped ? FLAG_STAMPED : 0);
+        result.writeInt(stringCount);
+        result.writeInt(entryCount);
+        result.writeInt(slotCount);
+        
+        // String offsets, strings are written in order of interning
+        int[] offsets = new int[stringCount];
+        int position = 0;
+        byte[] strings = stringBytes.toByteArray();
+        for (int i = 0; i < stringCount; i++) {
+            offsets[i] = stringsOffset + position;
+            position += 2 + (((strings[position] & 0xFF) << 8) | (strings[position + 1] & 0xFF));
+        }
+        for (int offset : offsets) {
+            result.writeInt(offset);
+        }
+        
+        int[] slots = new int[slotCount];
+        int mask = slotCount - 1;
+        for (int i = 0; i < entryCount; i++) {
+            int slot = entryHashes[i] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entriesOffset + entryOffsets[i];
+        }
+        for (int slot : slots) {
+            result.writeInt(slot);
+        }
+        entryBytes.writeTo(result);
+        result.write(strings);
+        result.flush();
+    }
+    
+    private static int intern(String value, Map<String, Integer> indexes, DataOutputStream data) throws IOException {
+        Integer index = indexes.get(value);
+        if (null == index) {
+            index = Integer.valueOf(indexes.size());
+            indexes.put(value, index);
+            byte[] bytes = value.getBytes(UTF_8);
+            data.writeShort(bytes.length);
+            data.write(bytes);
+        }
+        return index.intValue();
+    }
+    
+    public int size() {
+        return entryCount;
+    }
+    
+    public boolean isStamped() {
+        return stamped;
+    }
+    
+    /**
+     * Returns the header of the type or null when the type is absent
+     * or the entry is stale according to the stamp reported by the loader.
+     */
+    ClassHeader lookup(String type, ResourceLoader loader) {
+        int entry = find(type);
+        if (entry < 0) {
+            return null;
+        }
+        if (stamped) {
+            long stamp = buffer.getLong(entry + 16);
+            if (stamp == StampedResourceLoader.NO_STAMP || !(loader instanceof StampedResourceLoader)) {
+                return null;
+            }
+            try {
+                if (stamp != ((StampedResourceLoader)loader).getResourceStamp(type + ".class")) {
+                    return null;
+                }
+            } catch (IOException ex) {
+                // Live loading will report the actual error
+                return null;
+            }
+        }
+        int superIndex = buffer.getInt(entry + 8);
+        int access = buffer.getInt(entry + 12);
+        int interfacesCount = buffer.getInt(entry + 24);
+        String[] interfaces = ClassHierarchy.EMPTY_STRINGS;
+        if (interfacesCount > 0) {
+            interfaces = new String[interfacesCount];
+            for (int i = 0; i < interfacesCount; i++) {
+                interfaces[i] = string(buffer.getInt(entry + 28 + 4 * i));
+            }
+        }
+        return new ClassHeader(access, type, superIndex < 0 ? null : string(superIndex), interfaces);
+    }
+    
+    private int find(String type) {
+        int hash = type.hashCode();
+        int mask = slotCount - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = buffer.getInt(slotsOffset + 4 * slot)) != 0) {
+            if (buffer.getInt(entry) == hash && type.equals(string(buffer.getInt(entry + 4)))) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private String string(int index) {
+        String result = strings[index];
+        if (null == result) {
+            int offset = buffer.getInt(HEADER_SIZE + 4 * index);
+            int length = buffer.getShort(offset) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + 2 + i);
+            }
+            strings[index] = result = new String(bytes, UTF_8);
+        }
+        return result;
+    }
+}
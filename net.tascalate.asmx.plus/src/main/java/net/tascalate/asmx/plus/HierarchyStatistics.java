@@ -0,0 +1,133 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link HierarchyMonitor} that accumulates counters and latency 
+ * histograms of lookups, type loads, resource reads and lock waits.
+ * The same instance may be attached to any number of hierarchies and loaders.
+ */
+public final class HierarchyStatistics implements HierarchyMonitor {
+    private final LatencyHistogram lookupHits = new LatencyHistogram();
+    private final LatencyHistogram lookupMisses = new LatencyHistogram();
+    private final LatencyHistogram typeLoads = new LatencyHistogram();
+    private final LatencyHistogram resourceReads = new LatencyHistogram();
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+    private final ConcurrentMap<ResourceLoader, LongAdder> bytesRead = new ConcurrentHashMap<ResourceLoader, LongAdder>();
+    
+    public void lookupCompleted(Object context, String type1, String type2, boolean hit, long nanos) {
+        (hit ? lookupHits : lookupMisses).record(nanos);
+    }
+    
+    public void typeLoaded(Object context, String type, long nanos) {
+        typeLoads.record(nanos);
+    }
+    
+    public void resourceRead(Object context, ResourceLoader loader, String name, long bytes, long nanos) {
+        resourceReads.record(nanos);
+        LongAdder counter = bytesRead.get(loader);
+        if (null == counter) {
+            LongAdder newCounter = new LongAdder();
+            counter = bytesRead.putIfAbsent(loader, newCounter);
+            if (null == counter) {
+                counter = newCounter;
+            }
+        }
+        counter.add(bytes);
+    }
+    
+    public void lockWaited(Object context, long nanos) {
+        lockWaits.record(nanos);
+    }
+    
+    /**
+     * Latencies of lookups answered from the lookup cache.
+     */
+    public LatencyHistogram lookupHits() {
+        return lookupHits;
+    }
+    
+    /**
+     * Latencies of lookups that calculated the common super-class.
+     */
+    public LatencyHistogram lookupMisses() {
+        return lookupMisses;
+    }
+    
+    public LatencyHistogram typeLoads() {
+        return typeLoads;
+    }
+    
+    public LatencyHistogram resourceReads() {
+        return resourceReads;
+    }
+    
+    public LatencyHistogram lockWaits() {
+        return lockWaits;
+    }
+    
+    /**
+     * Returns the number of bytes read by every monitored loader.
+     */
+    public Map<ResourceLoader, Long> bytesRead() {
+        Map<ResourceLoader, Long> result = new HashMap<ResourceLoader, Long>();
+        for (Map.Entry<ResourceLoader, LongAdder> e : bytesRead.entrySet()) {
+            result.put(e.getKey(), e.getValue().sum());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+    
+    public long totalBytesRead() {
+        long result = 0;
+        for (LongAdder counter : bytesRead.values()) {
+            result += counter.sum();
+        }
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return "HierarchyStatistics[lookupHits=" + lookupHits + 
+               ", lookupMisses=" + lookupMisses + 
+               ", typeLoads=" + typeLoads + 
+               ", resourceReads=" + resourceReads + 
+               ", bytesRead=" + totalBytesRead() + 
+               ", lockWaits=" + lockWaits + "]";
+    }
+}
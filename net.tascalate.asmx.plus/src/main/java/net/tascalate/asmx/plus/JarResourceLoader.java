@@ -0,0 +1,421 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link ResourceLoader} over a JAR / ZIP archive that is memory-mapped 
+ * as a whole.
+ * <p>
+ * The central directory is parsed once, in the constructor, into a compact 
+ * open-addressing hash index that refers to the mapped directory records, 
+ * so {@link #hasResource(String)} does not allocate at all. Stored entries 
+ * are returned as read-only slices of the mapping, deflated entries are 
+ * inflated into heap buffers. No file is opened per call and no lock is 
+ * taken, the loader is safe for any number of concurrent readers.
+ * <p>
+ * The mapping is released only when the loader is garbage collected, so 
+ * the file may stay locked on some platforms until then. Archives larger 
+ * than 2GB are not supported.
+ */
+public class JarResourceLoader implements ByteBufferResourceLoader, IndexedResourceLoader, StampedResourceLoader {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final File file;
+    private final ByteBuffer mapping;
+    private final int shift;
+    
+    // Per entry: offset of the central directory record and name hash
+    private final int[] records;
+    private final int[] hashes;
+    // Decoded names of the entries with non-ASCII names, null if there are none
+    private final String[] decodedNames;
+    // Open addressing table, slot holds entry index + 1
+    private final int[] slots;
+    
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+    private volatile Set<String> packageNames;
+    
+    public JarResourceLoader(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archive is too large to be mapped: " + file);
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+        
+        int endHeader = findEndHeader();
+        long entriesCount = u2(endHeader + 10);
+        long directorySize = u4(endHeader + 12);
+        long directoryOffset = u4(endHeader + 16);
+        int locator = endHeader - 20;
+        if (locator >= 0 && mapping.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64EndHeader = mapping.getLong(locator + 8);
+            if (zip64EndHeader < 0 || 
+                zip64EndHeader > locator - 56 ||
+                mapping.getInt((int)zip64EndHeader) != ZIP64_END_HEADER_SIGNATURE) {
+                throw invalid("invalid ZIP64 end header");
+            }
+            int position = (int)zip64EndHeader;
+            entriesCount = mapping.getLong(position + 32);
+            directorySize = mapping.getLong(position + 40);
+            directoryOffset = mapping.getLong(position + 48);
+            endHeader = position;
+        }
+        if (entriesCount < 0 || entriesCount > Integer.MAX_VALUE / 4 || 
+            directorySize < 0 || directorySize > endHeader) {
+            throw invalid("invalid central directory");
+        }
+        // Data may be prepended to the archive (self-extracting archives, 
+        // launcher scripts), the real directory position reveals the shift
+        int directoryStart = (int)(endHeader - directorySize);
+        shift = (int)(directoryStart - directoryOffset);
+        
+        int count = (int)entriesCount;
+        records = new int[count];
+        hashes = new int[count];
+        String[] names = null;
+        int capacity = 16;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        
+        int position = directoryStart;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > endHeader || 
+                mapping.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw invalid("invalid central directory record");
+            }
+            int nameLength = u2(position + 28);
+            int recordSize = CENTRAL_HEADER_SIZE + nameLength + u2(position + 30) + u2(position + 32);
+            int nameStart = position + CENTRAL_HEADER_SIZE;
+            
+            int hash = 0;
+            boolean ascii = true;
+            for (int j = nameStart, end = nameStart + nameLength; j < end; j++) {
+                int b = mapping.get(j);
+                if (b < 0) {
+                    ascii = false;
+                    break;
+                }
+                hash = 31 * hash + b;
+            }
+            if (!ascii) {
+                if (null == names) {
+                    names = new String[count];
+                }
+                names[i] = decodeName(nameStart, nameLength);
+                hash = names[i].hashCode();
+            }
+            records[i] = position;
+            hashes[i] = hash;
+            
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+            position += recordSize;
+        }
+        decodedNames = names;
+    }
+    
+    public File file() {
+        return file;
+    }
+    
+    public boolean hasResource(String name) {
+        return findEntry(name) >= 0;
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        return new ByteBufferInputStream(getResourceAsBuffer(name));
+    }
+    
+    /**
+     * Returns the uncompressed size and the CRC-32 of the entry 
+     * (as recorded in the central directory) combined.
+     */
+    public long getResourceStamp(String name) throws IOException {
+        int entry = findEntry(name);
+        if (entry < 0) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        int record = records[entry];
+        return (u4(record + 24) << 32) | u4(record + 16);
+    }
+    
+    public Set<String> getPackageNames() {
+        Set<String> result = packageNames;
+        if (null == result) {
+            // Computed on demand only, the race is benign
+            Set<String> names = new HashSet<String>();
+            for (int i = records.length - 1; i >= 0; i--) {
+                String name = entryName(i);
+                if (!name.endsWith("/")) {
+                    int idx = name.lastIndexOf('/');
+                    names.add(idx < 0 ? "" : name.substring(0, idx));
+                }
+            }
+            packageNames = result = Collections.unmodifiableSet(names);
+        }
+        return result;
+    }
+    
+    public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+        int entry = findEntry(name);
+        if (entry < 0) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        int record = records[entry];
+        int method = u2(record + 10);
+        long compressedSize = u4(record + 20);
+        long size = u4(record + 24);
+        long localHeader = u4(record + 42);
+        if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL) {
+            long[] values = zip64Values(record, size, compressedSize, localHeader);
+            size = values[0];
+            compressedSize = values[1];
+            localHeader = values[2];
+        }
+        long localStart = localHeader + shift;
+        if (localStart < 0 || 
+            localStart + LOCAL_HEADER_SIZE > mapping.capacity() || 
+            mapping.getInt((int)localStart) != LOCAL_HEADER_SIGNATURE) {
+            throw invalid("invalid local header of " + name);
+        }
+        long dataStart = localStart + LOCAL_HEADER_SIZE + 
+                         u2((int)localStart + 26) + 
+                         u2((int)localStart + 28);
+        if (dataStart + compressedSize > mapping.capacity() || size > Integer.MAX_VALUE) {
+            throw invalid("invalid size of " + name);
+        }
+        ByteBuffer data = slice((int)dataStart, (int)compressedSize);
+        switch (method) {
+            case STORED:
+                return data;
+            case DEFLATED:
+                return ByteBuffer.wrap(inflate(data, (int)size, name));
+            default:
+                throw new IOException("Unsupported compression method " + method + " of " + name);
+        }
+    }
+    
+    /**
+     * Returns the index of the entry with the given name or -1. 
+     * The lookup is allocation-free.
+     */
+    int findEntry(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        int value;
+        while ((value = slots[slot]) != 0) {
+            int entry = value - 1;
+            if (hashes[entry] == hash && nameEquals(entry, name)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    int entriesCount() {
+        return records.length;
+    }
+    
+    String entryName(int entry) {
+        if (null != decodedNames && null != decodedNames[entry]) {
+            return decodedNames[entry];
+        }
+        int record = records[entry];
+        return decodeName(record + CENTRAL_HEADER_SIZE, u2(record + 28));
+    }
+    
+    private boolean nameEquals(int entry, String name) {
+        if (null != decodedNames && null != decodedNames[entry]) {
+            return name.equals(decodedNames[entry]);
+        }
+        int record = records[entry];
+        int length = u2(record + 28);
+        if (length != name.length()) {
+            return false;
+        }
+        int start = record + CENTRAL_HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            if (mapping.get(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private byte[] inflate(ByteBuffer data, int size, String name) throws IOException {
+        byte[] input = new byte[data.remaining()];
+        data.get(input);
+        byte[] result = new byte[size];
+        Inflater inflater = inflaters.poll();
+        if (null == inflater) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(input);
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int n = inflater.inflate(result, count, size - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != size) {
+                throw invalid("invalid compressed data of " + name);
+            }
+        } catch (DataFormatException ex) {
+            IOException error = invalid("invalid compressed data of " + name);
+            error.initCause(ex);
+            throw error;
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+        return result;
+    }
+    
+    private long[] zip64Values(int record, long size, long compressedSize, long localHeader) throws IOException {
+        // ZIP64 extended information extra field holds only 
+        // the values that overflow, in a fixed order
+        int extraStart = record + CENTRAL_HEADER_SIZE + u2(record + 28);
+        int extraEnd = extraStart + u2(record + 30);
+        int position = extraStart;
+        while (position + 4 <= extraEnd) {
+            int id = u2(position);
+            int length = u2(position + 2);
+            if (id == 0x0001) {
+                int value = position + 4;
+                if (size == 0xFFFFFFFFL) {
+                    size = mapping.getLong(value);
+                    value += 8;
+                }
+                if (compressedSize == 0xFFFFFFFFL) {
+                    compressedSize = mapping.getLong(value);
+                    value += 8;
+                }
+                if (localHeader == 0xFFFFFFFFL) {
+                    localHeader = mapping.getLong(value);
+                }
+                return new long[] {size, compressedSize, localHeader};
+            }
+            position += 4 + length;
+        }
+        throw invalid("missing ZIP64 extra field");
+    }
+    
+    private int findEndHeader() throws IOException {
+        int last = mapping.capacity() - END_HEADER_SIZE;
+        int first = Math.max(0, last - 0xFFFF);
+        for (int position = last; position >= first; position--) {
+            if (mapping.getInt(position) == END_HEADER_SIGNATURE) {
+                return position;
+            }
+        }
+        throw invalid("end of central directory is not found");
+    }
+    
+    private String decodeName(int start, int length) {
+        byte[] bytes = new byte[length];
+        slice(start, length).get(bytes);
+        return new String(bytes, UTF_8);
+    }
+    
+    private ByteBuffer slice(int start, int length) {
+        ByteBuffer result = mapping.duplicate();
+        // Cast keeps the code binary compatible with Java 8 
+        // where Buffer methods are not overridden covariantly
+        ((Buffer)result).limit(start + length).position(start);
+        return result.slice();
+    }
+    
+    private int u2(int position) {
+        return mapping.getShort(position) & 0xFFFF;
+    }
+    
+    private long u4(int position) {
+        return mapping.getInt(position) & 0xFFFFFFFFL;
+    }
+    
+    private IOException invalid(String message) {
+        return new IOException("Corrupted archive " + file + ": " + message);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + file + "]";
+    }
+}
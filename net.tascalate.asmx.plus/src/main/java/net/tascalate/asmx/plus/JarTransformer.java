@@ -0,0 +1,343 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassVisitor;
+import net.tascalate.asmx.ClassWriter;
+
+/**
+ * Transforms classes of an archive into a new archive in parallel.
+ * <p>
+ * Entries are streamed from the input one by one, every class is transformed 
+ * by a separate task of the executor (the common fork-join pool by default) 
+ * with the visitor chain of the {@link Transformation} and written by 
+ * {@link OfflineClassWriter} (with {@link ClassWriter#COMPUTE_FRAMES} by default). 
+ * All tasks share the same {@link ClassHierarchy}, so every type is loaded 
+ * once. Resources, directories and <code>module-info.class</code> are copied 
+ * unchanged. The output has exactly the same entries in the same order 
+ * as the input, regardless of the order the tasks complete in; only a 
+ * bounded window of entries is held in memory. Entries keep their 
+ * compression method: stored ones (like nested archives) stay stored, 
+ * deflated ones are compressed again.
+ * <p>
+ * The hierarchy should resolve classes of the input archive itself, 
+ * like the one over a {@link CompositeResourceLoader} of a {@link JarResourceLoader} 
+ * of the input and loaders of its dependencies.
+ * Signatures of signed archives are copied as is and are not valid 
+ * for transformed classes.
+ */
+public class JarTransformer {
+    
+    /**
+     * Creates visitor chains for classes, invoked concurrently 
+     * for different classes.
+     */
+    public interface Transformation {
+        /**
+         * Returns the head of the visitor chain that ends with the writer.
+         * 
+         * @param className the internal name of the class
+         * @param writer the writer of the transformed class
+         * @return the first visitor of the chain or null to copy the class unchanged
+         */
+        ClassVisitor createVisitor(String className, ClassVisitor writer);
+    }
+    
+    private static final byte[] EMPTY_BYTES = new byte[0];
+    // Header id of the ZIP64 extended information extra field
+    private static final int ZIP64_EXTRA = 0x0001;
+    
+    private final ClassHierarchy hierarchy;
+    private final Transformation transformation;
+    private final Executor executor;
+    private final int readerFlags;
+    private final int writerFlags;
+    private final TransformationCache cache;
+    
+    public JarTransformer(ClassHierarchy hierarchy, Transformation transformation) {
+        this(hierarchy, transformation, ForkJoinPool.commonPool(), ClassReader.SKIP_FRAMES, ClassWriter.COMPUTE_FRAMES, null);
+    }
+    
+    private JarTransformer(ClassHierarchy hierarchy, 
+                           Transformation transformation, 
+                           Executor executor, 
+                           int readerFlags, 
+                           int writerFlags,
+                           TransformationCache cache) {
+        this.hierarchy = hierarchy;
+        this.transformation = transformation;
+        this.executor = executor;
+        this.readerFlags = readerFlags;
+        this.writerFlags = writerFlags;
+        this.cache = cache;
+    }
+    
+    /**
+     * Returns the transformer that runs tasks with the executor specified.
+     */
+    public JarTransformer withExecutor(Executor executor) {
+        return new JarTransformer(hierarchy, transformation, executor, readerFlags, writerFlags, cache);
+    }
+    
+    /**
+     * Returns the transformer that uses the flags specified for 
+     * {@link ClassReader#accept(ClassVisitor, int)} and {@link OfflineClassWriter}.
+     */
+    public JarTransformer withFlags(int readerFlags, int writerFlags) {
+        return new JarTransformer(hierarchy, transformation, executor, readerFlags, writerFlags, cache);
+    }
+    
+    /**
+     * Returns the transformer that reuses results of the cache for classes 
+     * that are not changed since the previous run.
+     */
+    public JarTransformer withCache(TransformationCache cache) {
+        return new JarTransformer(hierarchy, transformation, executor, readerFlags, writerFlags, cache);
+    }
+    
+    public void transform(File input, File output) throws IOException {
+        InputStream in = new FileInputStream(input);
+        try {
+            OutputStream out = new FileOutputStream(output);
+            try {
+                transform(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Reads the archive from the input and writes the transformed one 
+     * to the output, streams are not closed.
+     */
+    public void transform(InputStream input, OutputStream output) throws IOException {
+        ZipInputStream in = new ZipInputStream(new BufferedInputStream(input));
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(output));
+        int window = 4 * (executor instanceof ForkJoinPool ? 
+                          ((ForkJoinPool)executor).getParallelism() : 
+                          Runtime.getRuntime().availableProcessors());
+        Deque<Pending> pending = new ArrayDeque<Pending>();
+        try {
+            ZipEntry entry;
+            while (null != (entry = in.getNextEntry())) {
+                byte[] content = entry.isDirectory() ? EMPTY_BYTES : readFully(in);
+                pending.addLast(submit(entry, content));
+                // Output order is the input order: wait for the oldest entry
+                while (pending.size() > window) {
+                    write(out, pending.removeFirst());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.removeFirst());
+            }
+            out.finish();
+            out.flush();
+        } finally {
+            for (Pending p : pending) {
+                p.content.cancel(false);
+            }
+        }
+    }
+    
+    byte[] transformClass(byte[] bytes) {
+        if (null != cache) {
+            try {
+                return cache.transform(hierarchy, bytes, transformation, readerFlags, writerFlags);
+            } catch (IOException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+        ClassReader reader = new ClassReader(bytes);
+        byte[] result = transformClass(reader, 
+                                       new OfflineClassWriter(hierarchy, sharedReader(reader, writerFlags), writerFlags), 
+                                       transformation, 
+                                       readerFlags);
+        return null == result ? bytes : result;
+    }
+    
+    /**
+     * Returns the transformed class or null when it is copied unchanged.
+     */
+    static byte[] transformClass(ClassReader reader, ClassWriter writer, Transformation transformation, int readerFlags) {
+        ClassVisitor visitor = transformation.createVisitor(reader.getClassName(), writer);
+        if (null == visitor) {
+            return null;
+        }
+        reader.accept(visitor, readerFlags);
+        return writer.toByteArray();
+    }
+    
+    static ClassReader sharedReader(ClassReader reader, int writerFlags) {
+        // Sharing the reader lets the writer copy untouched methods as is,
+        // which would keep stale (or absent) frames when they are recomputed
+        return (writerFlags & ClassWriter.COMPUTE_FRAMES) != 0 ? null : reader;
+    }
+    
+    private Pending submit(ZipEntry entry, final byte[] content) {
+        if (!isClass(entry)) {
+            return new Pending(entry, content, CompletableFuture.completedFuture(content));
+        }
+        return new Pending(entry, content, CompletableFuture.supplyAsync(new Supplier<byte[]>() {
+            public byte[] get() {
+                return transformClass(content);
+            }
+        }, executor));
+    }
+    
+    private static boolean isClass(ZipEntry entry) {
+        String name = entry.getName();
+        return !entry.isDirectory() && 
+               name.endsWith(".class") && 
+               !name.equals("module-info.class") && 
+               !name.endsWith("/module-info.class");
+    }
+    
+    private static void write(ZipOutputStream out, Pending pending) throws IOException {
+        ZipEntry source = pending.entry;
+        byte[] content;
+        try {
+            content = pending.content.join();
+        } catch (CompletionException ex) {
+            throw new IOException("Unable to transform " + source.getName(), ex.getCause());
+        }
+        // Compressed sizes of deflated entries differ, 
+        // so only names, attributes and sizes that hold are copied
+        ZipEntry target = new ZipEntry(source.getName());
+        if (source.getTime() != -1) {
+            target.setTime(source.getTime());
+        }
+        target.setComment(source.getComment());
+        byte[] extra = extraOf(source);
+        if (null != extra) {
+            target.setExtra(extra);
+        }
+        boolean unchanged = Arrays.equals(pending.input, content);
+        if (ZipEntry.STORED == source.getMethod()) {
+            target.setMethod(ZipEntry.STORED);
+            target.setSize(content.length);
+            target.setCompressedSize(content.length);
+            target.setCrc(unchanged && source.getCrc() != -1 ? source.getCrc() : crcOf(content));
+        } else if (unchanged) {
+            // Verified by the output stream when the entry is closed
+            if (source.getSize() != -1) {
+                target.setSize(source.getSize());
+            }
+            if (source.getCrc() != -1) {
+                target.setCrc(source.getCrc());
+            }
+        }
+        out.putNextEntry(target);
+        out.write(content);
+        out.closeEntry();
+    }
+    
+    /**
+     * Returns extra fields of the local header except the ZIP64 one, 
+     * that is written by the output stream when necessary; 
+     * null when there are no fields to copy.
+     */
+    private static byte[] extraOf(ZipEntry entry) {
+        byte[] extra = entry.getExtra();
+        if (null == extra) {
+            return null;
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream(extra.length);
+        int offset = 0;
+        while (offset + 4 <= extra.length) {
+            int tag = (extra[offset] & 0xFF) | (extra[offset + 1] & 0xFF) << 8;
+            int size = (extra[offset + 2] & 0xFF) | (extra[offset + 3] & 0xFF) << 8;
+            if (offset + 4 + size > extra.length) {
+                // Malformed, the rest is dropped
+                break;
+            }
+            if (tag != ZIP64_EXTRA) {
+                result.write(extra, offset, 4 + size);
+            }
+            offset += 4 + size;
+        }
+        return result.size() == 0 ? null : result.toByteArray();
+    }
+    
+    private static long crcOf(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+    
+    static final class Pending {
+        final ZipEntry entry;
+        final byte[] input;
+        final CompletableFuture<byte[]> content;
+        
+        Pending(ZipEntry entry, byte[] input, CompletableFuture<byte[]> content) {
+            this.entry = entry;
+            this.input = input;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ResourceLoader} for the platform classes of a modular JDK (9+) 
+ * backed by the <code>jrt:/</code> file system.
+ * <p>
+ * The package-to-module index is built once, in the constructor, so each 
+ * resource is resolved directly to the <code>/modules/&lt;module&gt;/...</code> 
+ * path. The loader may read the modules image of a different JDK installation,
+ * for example to compute frames against a JDK 17 target while running on JDK 21.
+ * For a JDK 8 target use {@link JarResourceLoader} over <code>lib/rt.jar</code>.
+ */
+public class JrtResourceLoader implements ByteBufferResourceLoader, IndexedResourceLoader, StampedResourceLoader, Closeable {
+    private static final URI JRT = URI.create("jrt:/");
+    
+    private final FileSystem fileSystem;
+    private final boolean ownFileSystem;
+    // Package internal name -> module root directory
+    private final Map<String, Path> packages;
+    private final long stamp;
+    
+    /**
+     * Creates a loader for the platform classes of the running JDK.
+     */
+    public JrtResourceLoader() throws IOException {
+        this(currentFileSystem(), false, new File(System.getProperty("java.home")));
+    }
+    
+    /**
+     * Creates a loader for the platform classes of the JDK installed 
+     * at the <code>javaHome</code> directory.
+     */
+    public JrtResourceLoader(File javaHome) throws IOException {
+        this(newFileSystem(javaHome), true, javaHome);
+    }
+    
+    private JrtResourceLoader(FileSystem fileSystem, boolean ownFileSystem, File javaHome) throws IOException {
+        this.fileSystem = fileSystem;
+        this.ownFileSystem = ownFileSystem;
+        // The image changes only as a whole, with the JDK update
+        File image = new File(javaHome, "lib/modules");
+        this.stamp = image.isFile() ? image.length() * 31 + image.lastModified() : NO_STAMP;
+        Map<String, Path> index = new HashMap<String, Path>();
+        // Every package is a directory under /packages with 
+        // a link per module that contains the package
+        DirectoryStream<Path> packageDirs = Files.newDirectoryStream(fileSystem.getPath("/packages"));
+        try {
+            for (Path packageDir : packageDirs) {
+                String packageName = packageDir.getFileName().toString().replace('.', '/');
+                DirectoryStream<Path> modules = Files.newDirectoryStream(packageDir);
+                try {
+                    for (Path module : modules) {
+                        Path moduleRoot = fileSystem.getPath("/modules", module.getFileName().toString());
+                        Path previous = index.put(packageName, moduleRoot);
+                        // A module is listed for the parent packages of its own 
+                        // packages as well (like java.datatransfer for java/awt), 
+                        // so prefer the module that has files in the package
+                        if (null != previous && !hasFiles(moduleRoot.resolve(packageName))) {
+                            index.put(packageName, previous);
+                        }
+                    }
+                } finally {
+                    modules.close();
+                }
+            }
+        } finally {
+            packageDirs.close();
+        }
+        this.packages = index;
+    }
+    
+    public boolean hasResource(String name) {
+        Path path = resolve(name);
+        return null != path && Files.isRegularFile(path);
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        return Files.newInputStream(existing(name));
+    }
+    
+    public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(existing(name)));
+    }
+    
+    /**
+     * Returns the same stamp for all resources, derived from 
+     * the size and the modification time of the modules image.
+     */
+    public long getResourceStamp(String name) throws IOException {
+        existing(name);
+        return stamp;
+    }
+    
+    public Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(packages.keySet());
+    }
+    
+    /**
+     * Returns the name of the module that contains the package 
+     * (in the internal form, like <code>java/lang</code>) or null.
+     */
+    public String moduleOf(String packageName) {
+        Path moduleRoot = packages.get(packageName);
+        return null == moduleRoot ? null : moduleRoot.getFileName().toString();
+    }
+    
+    public void close() throws IOException {
+        if (ownFileSystem) {
+            fileSystem.close();
+        }
+    }
+    
+    private Path resolve(String name) {
+        int idx = name.lastIndexOf('/');
+        if (idx <= 0) {
+            return null;
+        }
+        Path moduleRoot = packages.get(name.substring(0, idx));
+        return null == moduleRoot ? null : moduleRoot.resolve(name);
+    }
+    
+    private Path existing(String name) throws IOException {
+        Path path = resolve(name);
+        if (null == path) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        return path;
+    }
+    
+    private static boolean hasFiles(Path packageDir) throws IOException {
+        DirectoryStream<Path> files = Files.newDirectoryStream(packageDir);
+        try {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            files.close();
+        }
+    }
+    
+    private static FileSystem currentFileSystem() throws IOException {
+        try {
+            return FileSystems.getFileSystem(JRT);
+        } catch (FileSystemNotFoundException ex) {
+            throw unavailable(ex);
+        } catch (ProviderNotFoundException ex) {
+            throw unavailable(ex);
+        }
+    }
+    
+    private static FileSystem newFileSystem(File javaHome) throws IOException {
+        if (!new File(javaHome, "lib/modules").isFile()) {
+            throw new FileNotFoundException("Not a modular JDK installation: " + javaHome);
+        }
+        Map<String, String> env = Collections.singletonMap("java.home", javaHome.getAbsolutePath());
+        if (System.getProperty("java.specification.version", "").startsWith("1.")) {
+            // JDK 8 has no jrt:/ provider, use the one shipped with the target JDK
+            File jrtProvider = new File(javaHome, "lib/jrt-fs.jar");
+            ClassLoader providerLoader = new URLClassLoader(new URL[] {jrtProvider.toURI().toURL()});
+            return FileSystems.newFileSystem(JRT, env, providerLoader);
+        } else {
+            try {
+                return FileSystems.newFileSystem(JRT, env);
+            } catch (ProviderNotFoundException ex) {
+                throw unavailable(ex);
+            }
+        }
+    }
+    
+    private static IOException unavailable(RuntimeException cause) {
+        IOException result = new NoSuchFileException("jrt:/ file system is not available");
+        result.initCause(cause);
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + fileSystem + "]";
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with power-of-two buckets: the bucket N holds 
+ * values from 2<sup>N</sup> to 2<sup>N+1</sup>-1 nanoseconds. Recording is 
+ * lock-free and doesn't allocate, so the histogram may be updated by many 
+ * threads concurrently; reported values are approximate while recording
+ * is in progress.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+    
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    
+    public LatencyHistogram() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0L);
+        buckets[63 - Long.numberOfLeadingZeros(value | 1L)].increment();
+        totalNanos.add(value);
+    }
+    
+    public long count() {
+        long result = 0;
+        for (LongAdder bucket : buckets) {
+            result += bucket.sum();
+        }
+        return result;
+    }
+    
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+    
+    public long meanNanos() {
+        long count = count();
+        return count == 0 ? 0 : totalNanos() / count;
+    }
+    
+    /**
+     * Returns the upper bound of the bucket that contains the percentile specified.
+     * 
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in nanoseconds or 0 if nothing is recorded
+     */
+    public long percentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+    
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count=" + count() + 
+               ", mean=" + meanNanos() + 
+               "ns, p50=" + percentileNanos(50) + 
+               "ns, p99=" + percentileNanos(99) + "ns]";
+    }
+}
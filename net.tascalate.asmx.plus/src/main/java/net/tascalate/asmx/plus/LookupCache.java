@@ -0,0 +1,572 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache of common super-classes for (unordered) pairs of types identified 
+ * by {@link SymbolTable} ids.
+ * <p>
+ * The cache is split into independently locked segments; every segment is 
+ * an open-addressing table with linear probing over primitive arrays: 
+ * the key is the pair of ordered ids packed into a <code>long</code>, 
+ * the value is the id of the result, so lookups allocate no objects. 
+ * Reads use optimistic {@link StampedLock} stamps and take the read lock 
+ * only when a concurrent write is detected. When the cache is created with 
+ * the {@link CacheSpec#hasInvalidationIndex() invalidation index}, writers 
+ * also maintain the index of keys by type ids, so the pairs of invalidated 
+ * types are removed without scanning the tables; otherwise removals scan 
+ * all segments. Every removal starts a new epoch, results 
+ * calculated in the previous epoch are not stored, so removed pairs are not 
+ * published again by calculations that were in flight.
+ * <p>
+ * Bounded segments track access frequencies with a count-min sketch of 
+ * 4-bit counters that are halved periodically (TinyLFU). When a segment 
+ * is full, a few entries are sampled and the least frequently used one is 
+ * evicted, but only if the new entry is used more frequently; otherwise 
+ * the new entry is not admitted.
+ */
+final class LookupCache {
+    private static final int SAMPLE_SIZE = 8;
+    // Ids start from 1, so no valid key is 0
+    private static final long EMPTY = 0L;
+    
+    private final Segment[] segments;
+    private final int segmentBits;
+    
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final AtomicLong epoch = new AtomicLong();
+    
+    LookupCache(CacheSpec spec) {
+        int segmentCount = 1;
+        while (segmentCount < spec.getConcurrencyLevel()) {
+            segmentCount <<= 1;
+        }
+        if (spec.isBounded()) {
+            // Too small segments have too few candidates for eviction
+            while (segmentCount > 1 && segmentCount * SAMPLE_SIZE > spec.getMaximumSize()) {
+                segmentCount >>= 1;
+            }
+        }
+        segments = new Segment[segmentCount];
+        segmentBits = Integer.numberOfTrailingZeros(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            int capacity;
+            if (spec.isBounded()) {
+                int maximumSize = spec.getMaximumSize();
+                capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            } else {
+                capacity = CacheSpec.UNBOUNDED;
+            }
+            segments[i] = new Segment(capacity, spec.hasInvalidationIndex());
+        }
+    }
+    
+    /**
+     * Returns the id of the cached result or {@link SymbolTable#NONE}.
+     */
+    int get(int id1, int id2) {
+        long key = key(id1, id2);
+        int hash = hash(key);
+        int result = segmentFor(hash).get(key, hash);
+        (SymbolTable.NONE == result ? missCount : hitCount).increment();
+        return result;
+    }
+    
+    /**
+     * Returns the current epoch, it must be read before the types the result 
+     * is calculated from are obtained, see {@link #putIfAbsent(int, int, int, long, HierarchyMonitor)}.
+     */
+    long epoch() {
+        return epoch.get();
+    }
+    
+    /**
+     * Stores the result unless there is one already (that is returned then).
+     * The result may be not admitted by the bounded cache, it's not stored
+     * when there were removals since the epoch specified.
+     * Contended writes are reported to the monitor, if any.
+     */
+    int putIfAbsent(int id1, int id2, int result, long epoch, HierarchyMonitor monitor) {
+        long key = key(id1, id2);
+        int hash = hash(key);
+        return segmentFor(hash).putIfAbsent(key, hash, result, this.epoch, epoch, evictionCount, monitor);
+    }
+    
+    /**
+     * Removes all results for pairs where either of the types 
+     * is in the set of ids specified. With the invalidation index, pairs 
+     * are found via the index of keys by type id, so the cost depends on 
+     * the number of types and of their pairs, not on the size of the cache.
+     */
+    void removeAll(BitSet ids) {
+        // Before segments are locked: a writer either sees the new epoch 
+        // or stores the result that is removed here
+        epoch.incrementAndGet();
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.removeAll(ids);
+        }
+    }
+    
+    /**
+     * Removes all results for pairs where either of the types 
+     * is not in the set of ids specified, all segments are scanned.
+     */
+    void retainAll(BitSet ids) {
+        epoch.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.removeMatching(ids, false);
+        }
+    }
+    
+    CacheStats stats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), size);
+    }
+    
+    private Segment segmentFor(int hash) {
+        // High bits select the segment, low bits select the slot
+        return segments[(int)(((hash & 0xFFFFFFFFL) << segmentBits) >>> 32)];
+    }
+    
+    static long key(int id1, int id2) {
+        // Ordered, pairs are unordered
+        return id1 < id2 ? 
+               ((long)id1 << 32) | (id2 & 0xFFFFFFFFL) :
+               ((long)id2 << 32) | (id1 & 0xFFFFFFFFL);
+    }
+    
+    private static int hash(long key) {
+        // MurmurHash3 finalizer
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+    
+    static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final int capacity;
+        private final FrequencySketch sketch;
+        
+        private long[] keys;
+        private int[] values;
+        private int size;
+        // Keys of pairs by the ids of both types, guarded by the write lock;
+        // null unless the invalidation index is enabled
+        private final Map<Integer, KeyList> index;
+        
+        Segment(int capacity, boolean indexed) {
+            this.capacity = capacity;
+            this.sketch = capacity > 0 ? new FrequencySketch(capacity) : null;
+            this.index = indexed ? new HashMap<Integer, KeyList>() : null;
+            allocate(16);
+        }
+        
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        
+        int get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            int result = 0L == stamp ? SymbolTable.NONE : find(key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    result = find(key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (null != sketch) {
+                sketch.increment(hash);
+            }
+            return result;
+        }
+        
+        int putIfAbsent(long key, int hash, int result, AtomicLong epoch, long expectedEpoch, 
+                        LongAdder evictionCount, HierarchyMonitor monitor) {
+            long stamp = lock.tryWriteLock();
+            if (0L == stamp) {
+                // Contended
+                Object context = null == monitor ? null : monitor.started(HierarchyMonitor.Operation.LOCK_WAIT);
+                long start = null == monitor ? 0L : System.nanoTime();
+                stamp = lock.writeLock();
+                if (null != monitor) {
+                    monitor.lockWaited(context, System.nanoTime() - start);
+                }
+            }
+            try {
+                int previous = find(key, hash);
+                if (SymbolTable.NONE != previous) {
+                    return previous;
+                }
+                if (0 == capacity || epoch.get() != expectedEpoch) {
+                    // Not cached or calculated from removed types
+                    return result;
+                }
+                if (capacity > 0 && size >= capacity) {
+                    int victim = sampleVictim();
+                    if (sketch.frequency(hash) <= sketch.frequency(hash(keys[victim]))) {
+                        // Not admitted
+                        return result;
+                    }
+                    unindex(keys[victim]);
+                    removeAt(victim);
+                    evictionCount.increment();
+                }
+                if ((size + 1) * 4 > keys.length * 3) {
+                    resize(keys.length * 2);
+                }
+                insert(key, hash, result);
+                index(key);
+                return result;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        void removeAll(BitSet ids) {
+            if (null == index) {
+                removeMatching(ids, true);
+                return;
+            }
+            long stamp = lock.writeLock();
+            try {
+                if (index.isEmpty()) {
+                    return;
+                }
+                for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                    KeyList pairs = index.remove(Integer.valueOf(id));
+                    if (null == pairs) {
+                        continue;
+                    }
+                    for (int i = pairs.size - 1; i >= 0; i--) {
+                        long key = pairs.keys[i];
+                        int slot = slotOf(key);
+                        if (slot >= 0) {
+                            removeAt(slot);
+                        }
+                        // The pair is indexed by the other type as well
+                        int id1 = (int)(key >>> 32);
+                        unindex(id1 == id ? (int)key : id1, key);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        /**
+         * Removes pairs where either of the types is in the set of ids 
+         * (or is not, when <code>member</code> is false) scanning the table.
+         */
+        void removeMatching(BitSet ids, boolean member) {
+            long stamp = lock.writeLock();
+            try {
+                if (0 == size) {
+                    return;
+                }
+                // Collected first: backward-shift deletion moves entries
+                KeyList matching = new KeyList();
+                for (long key : keys) {
+                    if (EMPTY != key && (ids.get((int)(key >>> 32)) == member || ids.get((int)key) == member)) {
+                        matching.add(key);
+                    }
+                }
+                for (int i = matching.size - 1; i >= 0; i--) {
+                    long key = matching.keys[i];
+                    removeAt(slotOf(key));
+                    unindex(key);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        private void index(long key) {
+            if (null != index) {
+                indexOf((int)(key >>> 32)).add(key);
+                indexOf((int)key).add(key);
+            }
+        }
+        
+        private void unindex(long key) {
+            if (null != index) {
+                unindex((int)(key >>> 32), key);
+                unindex((int)key, key);
+            }
+        }
+        
+        private void unindex(int id, long key) {
+            Integer boxed = Integer.valueOf(id);
+            KeyList pairs = index.get(boxed);
+            if (null != pairs && pairs.remove(key) && 0 == pairs.size) {
+                index.remove(boxed);
+            }
+        }
+        
+        private KeyList indexOf(int id) {
+            Integer boxed = Integer.valueOf(id);
+            KeyList result = index.get(boxed);
+            if (null == result) {
+                result = new KeyList();
+                index.put(boxed, result);
+            }
+            return result;
+        }
+        
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask, n = keys.length; n > 0; i = (i + 1) & mask, n--) {
+                long k = keys[i];
+                if (EMPTY == k) {
+                    return -1;
+                }
+                if (k == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        // Must not fail on inconsistent state when invoked by optimistic reader
+        private int find(long key, int hash) {
+            long[] keys = this.keys;
+            int[] values = this.values;
+            int length = keys.length;
+            if (values.length != length) {
+                // Resize in progress
+                return SymbolTable.NONE;
+            }
+            int mask = length - 1;
+            for (int i = hash & mask, n = length; n > 0; i = (i + 1) & mask, n--) {
+                long k = keys[i];
+                if (EMPTY == k) {
+                    return SymbolTable.NONE;
+                }
+                if (k == key) {
+                    return values[i];
+                }
+            }
+            return SymbolTable.NONE;
+        }
+        
+        private void insert(long key, int hash, int result) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (EMPTY != keys[i]) {
+                i = (i + 1) & mask;
+            }
+            values[i] = result;
+            keys[i] = key;
+            size++;
+        }
+        
+        private void removeAt(int i) {
+            // Backward-shift deletion keeps probe sequences without tombstones
+            int mask = keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (EMPTY == keys[j]) {
+                    break;
+                }
+                int home = hash(keys[j]) & mask;
+                boolean movable = j > i ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+            values[i] = SymbolTable.NONE;
+            size--;
+        }
+        
+        private int sampleVictim() {
+            int mask = keys.length - 1;
+            int i = ThreadLocalRandom.current().nextInt() & mask;
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int sampled = 0, n = keys.length; sampled < SAMPLE_SIZE && n > 0; i = (i + 1) & mask, n--) {
+                if (EMPTY == keys[i]) {
+                    continue;
+                }
+                int frequency = sketch.frequency(hash(keys[i]));
+                if (frequency < victimFrequency) {
+                    victim = i;
+                    victimFrequency = frequency;
+                }
+                sampled++;
+            }
+            return victim;
+        }
+        
+        private void resize(int length) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            allocate(length);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (EMPTY != oldKeys[i]) {
+                    insert(oldKeys[i], hash(oldKeys[i]), oldValues[i]);
+                }
+            }
+        }
+        
+        private void allocate(int length) {
+            keys = new long[length];
+            values = new int[length];
+        }
+    }
+    
+    /**
+     * Unordered growable list of pair keys.
+     */
+    static final class KeyList {
+        long[] keys = new long[4];
+        int size;
+        
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+        
+        boolean remove(long key) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (keys[i] == key) {
+                    // Order doesn't matter, the last one fills the gap
+                    keys[i] = keys[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Count-min sketch with four 4-bit counters per item. Counters are 
+     * updated without synchronization: lost updates only make the estimates
+     * a bit less precise.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        FrequencySketch(int capacity) {
+            int length = 8;
+            while (length < capacity) {
+                length <<= 1;
+            }
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * Math.max(capacity, 8);
+        }
+        
+        int frequency(int hash) {
+            int result = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int count = (int)((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xF);
+                result = Math.min(result, count);
+            }
+            return result;
+        }
+        
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                if (((table[index] >>> offset) & 0xF) != 0xF) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+        
+        private void reset() {
+            // Aging: halve all counters, so old popularity fades away
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+        
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int)h & mask;
+        }
+        
+        private static int offsetOf(int hash, int i) {
+            // One of 16 counters in the long
+            return ((hash >>> (i << 3)) & 0xF) << 2;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The loader that reports every resource read by the underlying loader 
+ * to the {@link HierarchyMonitor}, see {@link HierarchyMonitors#monitored(ResourceLoader, HierarchyMonitor)}.
+ * Capabilities of the underlying loader are exposed only when it has them, 
+ * so streams are read exactly as far as without monitoring.
+ */
+class MonitoredResourceLoader implements ResourceLoader {
+    final ResourceLoader delegate;
+    final HierarchyMonitor monitor;
+    
+    MonitoredResourceLoader(ResourceLoader delegate, HierarchyMonitor monitor) {
+        this.delegate = delegate;
+        this.monitor = monitor;
+    }
+    
+    static MonitoredResourceLoader of(ResourceLoader delegate, HierarchyMonitor monitor) {
+        if (delegate instanceof ByteBufferResourceLoader) {
+            return delegate instanceof StampedResourceLoader ?
+                   new StampedBuffered((ByteBufferResourceLoader)delegate, monitor) :
+                   new Buffered((ByteBufferResourceLoader)delegate, monitor);
+        } else {
+            return delegate instanceof StampedResourceLoader ?
+                   new Stamped((StampedResourceLoader)delegate, monitor) :
+                   new MonitoredResourceLoader(delegate, monitor);
+        }
+    }
+    
+    public boolean hasResource(String name) {
+        return delegate.hasResource(name);
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        Object context = monitor.started(HierarchyMonitor.Operation.RESOURCE_READ);
+        long start = System.nanoTime();
+        InputStream in = delegate.getResourceAsStream(name);
+        return null == in ? null : new CountingInputStream(in, name, context, start);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+    
+    static class Stamped extends MonitoredResourceLoader implements StampedResourceLoader {
+        Stamped(StampedResourceLoader delegate, HierarchyMonitor monitor) {
+            super(delegate, monitor);
+        }
+        
+        public long getResourceStamp(String name) throws IOException {
+            return ((StampedResourceLoader)delegate).getResourceStamp(name);
+        }
+    }
+    
+    static class Buffered extends MonitoredResourceLoader implements ByteBufferResourceLoader {
+        Buffered(ByteBufferResourceLoader delegate, HierarchyMonitor monitor) {
+            super(delegate, monitor);
+        }
+        
+        public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+            Object context = monitor.started(HierarchyMonitor.Operation.RESOURCE_READ);
+            long start = System.nanoTime();
+            ByteBuffer result = ((ByteBufferResourceLoader)delegate).getResourceAsBuffer(name);
+            monitor.resourceRead(context, delegate, name, result.remaining(), System.nanoTime() - start);
+            return result;
+        }
+    }
+    
+    static class StampedBuffered extends Buffered implements StampedResourceLoader {
+        StampedBuffered(ByteBufferResourceLoader delegate, HierarchyMonitor monitor) {
+            super(delegate, monitor);
+        }
+        
+        public long getResourceStamp(String name) throws IOException {
+            return ((StampedResourceLoader)delegate).getResourceStamp(name);
+        }
+    }
+    
+    /**
+     * Reports the bytes read when the stream is closed.
+     */
+    private final class CountingInputStream extends FilterInputStream {
+        private final String name;
+        private final Object context;
+        private final long start;
+        private long count;
+        private boolean closed;
+        
+        CountingInputStream(InputStream in, String name, Object context, long start) {
+            super(in);
+            this.name = name;
+            this.context = context;
+            this.start = start;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result >= 0) {
+                count++;
+            }
+            return result;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count += result;
+            }
+            return result;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    monitor.resourceRead(context, delegate, name, count, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
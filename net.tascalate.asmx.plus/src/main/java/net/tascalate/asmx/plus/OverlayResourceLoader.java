@@ -0,0 +1,198 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import net.tascalate.asmx.ClassReader;
+
+/**
+ * {@link ResourceLoader} that serves in-memory resources, like classes 
+ * generated in the current run, on top of another loader; in-memory 
+ * resources take priority over the resources of the underlying loader.
+ * <p>
+ * Resources may be added, replaced and removed concurrently with reads. 
+ * Hierarchies {@link #bind(ClassHierarchy) bound} to the overlay are updated 
+ * in place whenever a class is changed: the class, its loaded sub-types 
+ * and the cached lookups that involve them are reloaded, the rest of the 
+ * caches is kept. The overlay should be the outermost loader of the 
+ * hierarchy, {@link CompositeResourceLoader} expects immutable elements.
+ * <p>
+ * Content arrays are not copied and must not be modified once added.
+ */
+public class OverlayResourceLoader implements ByteBufferResourceLoader, StampedResourceLoader {
+    private static final String CLASS_SUFFIX = ".class";
+    
+    private final ResourceLoader delegate;
+    private final ConcurrentMap<String, byte[]> resources = new ConcurrentHashMap<String, byte[]>();
+    private final List<ClassHierarchy> hierarchies = new CopyOnWriteArrayList<ClassHierarchy>();
+    
+    public OverlayResourceLoader(ResourceLoader delegate) {
+        this.delegate = delegate;
+    }
+    
+    public ResourceLoader delegate() {
+        return delegate;
+    }
+    
+    /**
+     * Registers the hierarchy to be updated on changes of classes.
+     * Views created with {@link ClassHierarchy#shareWith(ResourceLoader)} 
+     * share caches, so binding one of them is enough.
+     * 
+     * @param hierarchy the hierarchy that uses this loader
+     * @return the hierarchy
+     */
+    public ClassHierarchy bind(ClassHierarchy hierarchy) {
+        hierarchies.add(hierarchy);
+        return hierarchy;
+    }
+    
+    public void unbind(ClassHierarchy hierarchy) {
+        hierarchies.remove(hierarchy);
+    }
+    
+    /**
+     * Adds or replaces the class, like the result of {@link net.tascalate.asmx.ClassWriter#toByteArray()}.
+     * 
+     * @param bytes the content of the class file
+     * @return the internal name of the class
+     */
+    public String putClass(byte[] bytes) {
+        String name = new ClassReader(bytes).getClassName();
+        resources.put(name + CLASS_SUFFIX, bytes);
+        invalidate(Collections.singleton(name));
+        return name;
+    }
+    
+    /**
+     * Adds or replaces several classes, bound hierarchies are updated once.
+     * 
+     * @param classes the contents of class files
+     * @return internal names of the classes
+     */
+    public List<String> putClasses(Collection<byte[]> classes) {
+        List<String> names = new ArrayList<String>(classes.size());
+        for (byte[] bytes : classes) {
+            String name = new ClassReader(bytes).getClassName();
+            resources.put(name + CLASS_SUFFIX, bytes);
+            names.add(name);
+        }
+        invalidate(names);
+        return names;
+    }
+    
+    /**
+     * Adds or replaces the resource; class files are handled 
+     * like {@link #putClass(byte[])}.
+     */
+    public void putResource(String name, byte[] content) {
+        resources.put(name, content);
+        invalidateIfClass(name);
+    }
+    
+    /**
+     * Removes the in-memory resource, so the resource of the underlying 
+     * loader (if any) is visible again.
+     * 
+     * @param name the resource name
+     * @return whether the in-memory resource existed
+     */
+    public boolean removeResource(String name) {
+        if (null == resources.remove(name)) {
+            return false;
+        }
+        invalidateIfClass(name);
+        return true;
+    }
+    
+    public boolean hasResource(String name) {
+        return resources.containsKey(name) || delegate.hasResource(name);
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        byte[] content = resources.get(name);
+        return null != content ? new ByteArrayInputStream(content) : delegate.getResourceAsStream(name);
+    }
+    
+    public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+        byte[] content = resources.get(name);
+        // Read-only, so callers can't change the content behind the back of hierarchies
+        return null != content ? ByteBuffer.wrap(content).asReadOnlyBuffer() : ResourceLoaders.getResourceAsBuffer(delegate, name);
+    }
+    
+    public long getResourceStamp(String name) throws IOException {
+        byte[] content = resources.get(name);
+        if (null != content) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            // Never NO_STAMP, so snapshot entries are always validated
+            return (1L << 32) | crc.getValue();
+        }
+        if (delegate instanceof StampedResourceLoader) {
+            return ((StampedResourceLoader)delegate).getResourceStamp(name);
+        } else if (delegate.hasResource(name)) {
+            return NO_STAMP;
+        } else {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+    }
+    
+    private void invalidateIfClass(String name) {
+        if (name.endsWith(CLASS_SUFFIX)) {
+            invalidate(Collections.singleton(name.substring(0, name.length() - CLASS_SUFFIX.length())));
+        }
+    }
+    
+    private void invalidate(Collection<String> types) {
+        for (ClassHierarchy hierarchy : hierarchies) {
+            hierarchy.invalidate(types);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + resources.size() + " resource(s) over " + delegate + "]";
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.tascalate.asmx.ClassReader;
+
+/**
+ * Helpers to read resources from any {@link ResourceLoader}, using the 
+ * zero-copy {@link ByteBufferResourceLoader} capability when it's available.
+ */
+public final class ResourceLoaders {
+    private ResourceLoaders() {}
+    
+    public static ByteBuffer getResourceAsBuffer(ResourceLoader loader, String name) throws IOException {
+        if (loader instanceof ByteBufferResourceLoader) {
+            return ((ByteBufferResourceLoader)loader).getResourceAsBuffer(name);
+        } else {
+            return ByteBuffer.wrap(readFully(openStream(loader, name)));
+        }
+    }
+    
+    /**
+     * Returns the content of the resource as a new array owned by the caller.
+     */
+    public static byte[] getResourceAsBytes(ResourceLoader loader, String name) throws IOException {
+        if (loader instanceof ByteBufferResourceLoader) {
+            // Always copied: a heap buffer may wrap the array the loader 
+            // keeps, and the content must not be modified via the result
+            ByteBuffer buffer = ((ByteBufferResourceLoader)loader).getResourceAsBuffer(name);
+            byte[] result = new byte[buffer.remaining()];
+            buffer.get(result);
+            return result;
+        } else {
+            return readFully(openStream(loader, name));
+        }
+    }
+    
+    public static ClassHeader readClassHeader(ResourceLoader loader, String internalName) throws IOException {
+        String name = internalName + ".class";
+        if (loader instanceof ByteBufferResourceLoader) {
+            return ClassHeader.read(((ByteBufferResourceLoader)loader).getResourceAsBuffer(name), name);
+        } else {
+            InputStream in = openStream(loader, name);
+            try {
+                return ClassHeader.read(in, name);
+            } finally {
+                in.close();
+            }
+        }
+    }
+    
+    public static ClassReader newClassReader(ResourceLoader loader, String internalName) throws IOException {
+        String name = internalName + ".class";
+        if (loader instanceof ByteBufferResourceLoader) {
+            ByteBuffer buffer = ((ByteBufferResourceLoader)loader).getResourceAsBuffer(name);
+            if (buffer.hasArray()) {
+                // Heap buffer is used in place 
+                return new ClassReader(buffer.array(), 
+                                       buffer.arrayOffset() + buffer.position(), 
+                                       buffer.remaining());
+            } else {
+                // Exactly one copy for direct / mapped buffers
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return new ClassReader(bytes);
+            }
+        } else {
+            InputStream in = openStream(loader, name);
+            try {
+                return new ClassReader(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+    
+    private static InputStream openStream(ResourceLoader loader, String name) throws IOException {
+        InputStream in = loader.getResourceAsStream(name);
+        if (null == in) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        return in;
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            byte[] bytes = new byte[Math.max(1024, in.available())];
+            int size = 0;
+            int count;
+            while ((count = in.read(bytes, size, bytes.length - size)) >= 0) {
+                size += count;
+                if (size == bytes.length) {
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    bytes[size++] = (byte)next;
+                }
+            }
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * Reverse dependency index of loaded types: names of direct sub-types 
+ * (and arrays) of every type, used to find types affected by the 
+ * invalidation. Edges of a type are replaced when the type is loaded again 
+ * and removed when it is invalidated, so stale edges don't accumulate. 
+ * Types evicted from the cache keep their edges: lookups of such types 
+ * may still be cached.
+ */
+final class SubTypeIndex {
+    private static final String[] NONE = new String[0];
+    
+    // Direct super-types as registered
+    private final ConcurrentMap<String, String[]> superTypes = new ConcurrentHashMap<String, String[]>();
+    private final ConcurrentMap<String, Set<String>> subTypes = new ConcurrentHashMap<String, Set<String>>();
+    
+    /**
+     * Registers the type with its direct super-types, 
+     * edges of the previous version are replaced.
+     */
+    void register(String type, String[] supers) {
+        String[] previous = superTypes.put(type, supers);
+        if (null != previous) {
+            for (String superType : previous) {
+                if (!contains(supers, superType)) {
+                    removeEdge(superType, type);
+                }
+            }
+        }
+        for (String superType : supers) {
+            addEdge(superType, type);
+        }
+    }
+    
+    void unregister(String type) {
+        String[] previous = superTypes.remove(type);
+        for (String superType : null == previous ? NONE : previous) {
+            removeEdge(superType, type);
+        }
+    }
+    
+    /**
+     * Whether the type was loaded and not invalidated since then.
+     */
+    boolean isRegistered(String type) {
+        return superTypes.containsKey(type);
+    }
+    
+    /**
+     * Returns the types specified with all their transitive sub-types.
+     */
+    Set<String> closure(Collection<String> types) {
+        Set<String> result = new HashSet<String>(types);
+        Queue<String> queue = new ArrayDeque<String>(types);
+        String type;
+        while (null != (type = queue.poll())) {
+            Set<String> dependents = subTypes.get(type);
+            if (null == dependents) {
+                continue;
+            }
+            for (String dependent : dependents) {
+                if (result.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private void addEdge(String superType, final String type) {
+        // Atomic per super-type, so a concurrent removal of the 
+        // last edge can't drop the set this edge is added to
+        subTypes.compute(superType, new BiFunction<String, Set<String>, Set<String>>() {
+            public Set<String> apply(String key, Set<String> dependents) {
+                Set<String> result = null == dependents ? ConcurrentHashMap.<String>newKeySet() : dependents;
+                result.add(type);
+                return result;
+            }
+        });
+    }
+    
+    private void removeEdge(String superType, final String type) {
+        subTypes.computeIfPresent(superType, new BiFunction<String, Set<String>, Set<String>>() {
+            public Set<String> apply(String key, Set<String> dependents) {
+                dependents.remove(type);
+                return dependents.isEmpty() ? null : dependents;
+            }
+        });
+    }
+    
+    private static boolean contains(String[] values, String value) {
+        for (String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps internal names of types to dense int identifiers starting from 1, 
+ * so 0 may be used as "no type" marker. Identifiers are never reused: 
+ * the table grows with the number of distinct names ever seen, that is 
+ * bounded by the number of types in the class path.
+ * <p>
+ * Lookup of an existing name does not allocate and takes no locks.
+ */
+final class SymbolTable {
+    static final int NONE = 0;
+    
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    // Writes are guarded by "this", the array is re-published on growth
+    private volatile String[] names = new String[256];
+    private int size = 1;
+    
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return null != id ? id.intValue() : register(name);
+    }
+    
+    String nameOf(int id) {
+        return names[id];
+    }
+    
+    int size() {
+        return ids.size();
+    }
+    
+    private synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (null != id) {
+            return id.intValue();
+        }
+        int result = size++;
+        String[] current = names;
+        if (result == current.length) {
+            String[] grown = new String[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        current[result] = name;
+        names = current;
+        // Publishes the name: readers get the id only via the map
+        ids.put(name, Integer.valueOf(result));
+        return result;
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.tascalate.asmx.ClassReader;
+
+/**
+ * Persistent cache of transformed classes that lets incremental builds 
+ * skip classes that are not changed since the previous run.
+ * <p>
+ * Every result is keyed by the SHA-256 hash of the declared version of 
+ * the transformation, the class name of the transformation, the reader 
+ * and writer flags and the bytes of the input class. Along with the 
+ * result, the cache records every {@link ClassHierarchy#getCommonSuperClass(String, String)}
+ * query that {@link OfflineClassWriter} issued while computing frames, with 
+ * its answer. A cached result is used only if every recorded query still 
+ * has the same answer in the current hierarchy, so a change in ancestors 
+ * of the types the class depends on invalidates it, while changes in 
+ * unrelated types do not.
+ * <p>
+ * Entries are files of the cache directory, written atomically, so the 
+ * cache may be shared by concurrent transformations and builds. 
+ * The version must be changed whenever the transformation changes 
+ * its output for the same input.
+ */
+public class TransformationCache {
+    private static final int MAGIC = 0x41534D54; // ASMT
+    private static final int VERSION = 1;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final File directory;
+    private final byte[] version;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    
+    public TransformationCache(File directory, String version) {
+        this.directory = directory;
+        this.version = version.getBytes(UTF_8);
+    }
+    
+    /**
+     * Returns the cached result for the class or transforms it with 
+     * {@link OfflineClassWriter} and caches the result.
+     * 
+     * @param hierarchy the hierarchy to validate the cached result against and to compute frames with
+     * @param input the bytes of the class
+     * @param transformation the transformation that matches the version of the cache
+     * @param readerFlags the flags for {@link ClassReader#accept(net.tascalate.asmx.ClassVisitor, int)}
+     * @param writerFlags the flags for {@link OfflineClassWriter}
+     * @return the bytes of the transformed class
+     * @throws IOException if the cache can't be read or written
+     */
+    public byte[] transform(ClassHierarchy hierarchy, 
+                            byte[] input, 
+                            JarTransformer.Transformation transformation, 
+                            int readerFlags, 
+                            int writerFlags) throws IOException {
+        File file = entryFile(input, transformation.getClass().getName(), readerFlags, writerFlags);
+        Entry entry = readEntry(file);
+        if (null != entry && entry.isValid(hierarchy)) {
+            hitCount.increment();
+            return null == entry.output ? input : entry.output;
+        }
+        missCount.increment();
+        
+        ClassReader reader = new ClassReader(input);
+        RecordingClassWriter writer = new RecordingClassWriter(
+            hierarchy, JarTransformer.sharedReader(reader, writerFlags), writerFlags
+        );
+        byte[] output = JarTransformer.transformClass(reader, writer, transformation, readerFlags);
+        writeEntry(file, new Entry(writer.dependencies, output));
+        return null == output ? input : output;
+    }
+    
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+    
+    public long getMissCount() {
+        return missCount.sum();
+    }
+    
+    File entryFile(byte[] input, String transformationName, int readerFlags, int writerFlags) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(ex);
+        }
+        digest.update(version);
+        // Zeros separate variable-length parts
+        digest.update((byte)0);
+        digest.update(transformationName.getBytes(UTF_8));
+        digest.update((byte)0);
+        digest.update(ByteBuffer.allocate(8).putInt(readerFlags).putInt(writerFlags).array());
+        digest.update(input);
+        byte[] hash = digest.digest();
+        char[] name = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            name[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            name[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        String hex = new String(name);
+        // Spread entries across sub-directories to keep them small
+        return new File(new File(directory, hex.substring(0, 2)), hex.substring(2));
+    }
+    
+    private static Entry readEntry(File file) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        // Sizes are checked against the actual content, 
+        // so corrupted entries never cause huge allocations
+        ByteArrayInputStream content = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(content);
+        try {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return null;
+            }
+            int count = in.readInt();
+            // Every dependency takes at least three lengths of strings
+            if (count < 0 || count > content.available() / 6) {
+                return null;
+            }
+            Map<String, String[]> dependencies = new LinkedHashMap<String, String[]>();
+            for (int i = 0; i < count; i++) {
+                String[] dependency = {in.readUTF(), in.readUTF(), in.readUTF()};
+                dependencies.put(dependencyKey(dependency[0], dependency[1]), dependency);
+            }
+            int size = in.readInt();
+            // Nothing may follow the output
+            if (size < -1 || Math.max(size, 0) != content.available()) {
+                return null;
+            }
+            byte[] output = null;
+            if (size >= 0) {
+                output = new byte[size];
+                in.readFully(output);
+            }
+            return new Entry(dependencies, output);
+        } catch (IOException ex) {
+            // Truncated or malformed entry, will be overwritten
+            return null;
+        }
+    }
+    
+    private static void writeEntry(File file, Entry entry) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create cache directory " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(entry.dependencies.size());
+                for (String[] dependency : entry.dependencies.values()) {
+                    out.writeUTF(dependency[0]);
+                    out.writeUTF(dependency[1]);
+                    out.writeUTF(dependency[2]);
+                }
+                if (null == entry.output) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.output.length);
+                    out.write(entry.output);
+                }
+            } finally {
+                out.close();
+            }
+            // Readers see either the previous entry or the complete new one
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+    
+    static String dependencyKey(String type1, String type2) {
+        // Semicolon is not valid in internal names
+        return type1 + ';' + type2;
+    }
+    
+    static final class Entry {
+        // Queries with answers: {type1, type2, common super class}
+        final Map<String, String[]> dependencies;
+        // Null if the class is copied unchanged
+        final byte[] output;
+        
+        Entry(Map<String, String[]> dependencies, byte[] output) {
+            this.dependencies = dependencies;
+            this.output = output;
+        }
+        
+        boolean isValid(ClassHierarchy hierarchy) {
+            for (String[] dependency : dependencies.values()) {
+                String commonSuperClass;
+                try {
+                    commonSuperClass = hierarchy.getCommonSuperClass(dependency[0], dependency[1]);
+                } catch (UnresolvedTypeException ex) {
+                    // Let the transformation report the missing type
+                    return false;
+                }
+                if (!dependency[2].equals(commonSuperClass)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    static final class RecordingClassWriter extends OfflineClassWriter {
+        // Written by the single thread that runs the transformation
+        final Map<String, String[]> dependencies = new LinkedHashMap<String, String[]>();
+        
+        RecordingClassWriter(ClassHierarchy classHierarchy, ClassReader reader, int flags) {
+            super(classHierarchy, reader, flags);
+        }
+        
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            String result = super.getCommonSuperClass(type1, type2);
+            dependencies.put(dependencyKey(type1, type2), new String[] {type1, type2, result});
+            return result;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Memory-sensitive cache of loaded types keyed by the internal name.
+ * <p>
+ * Values are loaded outside of any lock, so different types are loaded 
+ * in parallel. Concurrent requests for the same type share a single 
+ * in-flight load. A thread that (directly or indirectly) asks for the 
+ * type it is loading right now gets an {@link IOException} instead of 
+ * a self-deadlock.
+ * <p>
+ * Asynchronous requests share in-flight loads with synchronous ones, 
+ * so a type is never loaded twice concurrently.
+ * 
+ * @param <V> type of cached values
+ */
+final class TypeCache<V> {
+    
+    interface Loader<V> {
+        /**
+         * Loads the value, the load is reported to the monitor 
+         * of the request that started it, if any.
+         */
+        V load(String name, HierarchyMonitor monitor) throws IOException;
+    }
+    
+    private final ConcurrentMap<String, Object> entries = new ConcurrentHashMap<String, Object>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+    
+    @SuppressWarnings("unchecked")
+    V get(String name, Loader<? extends V> loader, HierarchyMonitor monitor) throws IOException {
+        expungeStaleEntries();
+        while (true) {
+            Object entry = entries.get(name);
+            if (entry instanceof Loading) {
+                return ((Loading<V>)entry).await(name, monitor);
+            }
+            if (null != entry) {
+                V value = ((Entry<V>)entry).get();
+                if (null != value) {
+                    return value;
+                }
+            }
+            Loading<V> loading = new Loading<V>(Thread.currentThread());
+            if (!acquire(name, entry, loading)) {
+                // Lost the race to another loader, re-check
+                continue;
+            }
+            V value;
+            try {
+                value = loader.load(name, monitor);
+            } catch (Throwable ex) {
+                fail(name, loading, ex);
+                throw ex;
+            }
+            complete(name, loading, value);
+            return value;
+        }
+    }
+    
+    /**
+     * Returns the future of the value; when the value is neither loaded 
+     * nor being loaded, the loader is invoked by the executor.
+     */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<V> getAsync(final String name, final Loader<? extends V> loader, final HierarchyMonitor monitor, Executor executor) {
+        expungeStaleEntries();
+        while (true) {
+            Object entry = entries.get(name);
+            if (entry instanceof Loading) {
+                return dependent((Loading<V>)entry);
+            }
+            if (null != entry) {
+                V value = ((Entry<V>)entry).get();
+                if (null != value) {
+                    return CompletableFuture.completedFuture(value);
+                }
+            }
+            // No owner thread: the load runs elsewhere, so there is
+            // no re-entrance to detect
+            final Loading<V> loading = new Loading<V>(null);
+            if (!acquire(name, entry, loading)) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        V value;
+                        try {
+                            value = loader.load(name, monitor);
+                        } catch (Throwable ex) {
+                            fail(name, loading, ex);
+                            return;
+                        }
+                        complete(name, loading, value);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                fail(name, loading, ex);
+            }
+            return dependent(loading);
+        }
+    }
+    
+    /**
+     * Returns all values that are loaded and not evicted yet.
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<V> result = new ArrayList<V>(entries.size());
+        for (Object entry : entries.values()) {
+            if (entry instanceof Entry) {
+                V value = ((Entry<V>)entry).get();
+                if (null != value) {
+                    result.add(value);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private boolean acquire(String name, Object entry, Loading<V> loading) {
+        return null == entry ? 
+               null == entries.putIfAbsent(name, loading) :
+               entries.replace(name, entry, loading);
+    }
+    
+    private void complete(String name, Loading<V> loading, V value) {
+        entries.replace(name, loading, new Entry<V>(name, value, queue));
+        loading.complete(value);
+    }
+    
+    private void fail(String name, Loading<V> loading, Throwable ex) {
+        entries.remove(name, loading);
+        loading.completeExceptionally(ex);
+    }
+    
+    private static <V> CompletableFuture<V> dependent(Loading<V> loading) {
+        // Callers must not be able to complete the shared in-flight load
+        return loading.thenApply(Function.<V>identity());
+    }
+    
+    void put(String name, V value) {
+        entries.put(name, new Entry<V>(name, value, queue));
+    }
+    
+    /**
+     * Whether the value is cached or being loaded.
+     */
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+    
+    /**
+     * Removes the value or the in-flight load; the load in progress 
+     * completes for its callers but the value is not cached.
+     */
+    void remove(String name) {
+        entries.remove(name);
+    }
+    
+    private void expungeStaleEntries() {
+        Object ref;
+        while (null != (ref = queue.poll())) {
+            Entry<?> entry = (Entry<?>)ref;
+            entries.remove(entry.name, entry);
+        }
+    }
+    
+    static final class Entry<V> extends SoftReference<V> {
+        final String name;
+        
+        Entry(String name, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.name = name;
+        }
+    }
+    
+    static final class Loading<V> extends CompletableFuture<V> {
+        private final Thread owner;
+        
+        Loading(Thread owner) {
+            this.owner = owner;
+        }
+        
+        V await(String name, HierarchyMonitor monitor) throws IOException {
+            if (owner == Thread.currentThread()) {
+                throw new IOException("Circular dependency while loading " + name);
+            }
+            boolean waiting = null != monitor && !isDone();
+            Object context = waiting ? monitor.started(HierarchyMonitor.Operation.LOCK_WAIT) : null;
+            long start = waiting ? System.nanoTime() : 0L;
+            try {
+                return join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw new IOException(cause.getMessage(), cause);
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                } else if (cause instanceof Error) {
+                    throw (Error)cause;
+                } else {
+                    throw ex;
+                }
+            } finally {
+                if (waiting) {
+                    monitor.lockWaited(context, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.IOException;
+
+/**
+ * Defines how {@link ClassHierarchy} treats types whose class files 
+ * can't be found by the resource loader.
+ * <p>
+ * The policy is asked at most once per missing type: the outcome, either 
+ * the substitute header or the failure, is recorded in the negative cache 
+ * of the hierarchy, so subsequent lookups touching the type do no I/O.
+ */
+public interface UnresolvedTypePolicy {
+    
+    /**
+     * Fails every lookup that involves the missing type with 
+     * {@link UnresolvedTypeException}.
+     */
+    public static final UnresolvedTypePolicy FAIL_FAST = new UnresolvedTypePolicy() {
+        public ClassHeader resolve(String type, IOException cause) throws IOException {
+            throw cause;
+        }
+    };
+    
+    /**
+     * Treats the missing type as a class that directly extends 
+     * <code>java/lang/Object</code> and implements no interfaces.
+     */
+    public static final UnresolvedTypePolicy ASSUME_OBJECT = new UnresolvedTypePolicy() {
+        public ClassHeader resolve(String type, IOException cause) {
+            return new ClassHeader(0, type, "java/lang/Object", null);
+        }
+    };
+    
+    /**
+     * Returns the header to use instead of the missing one.
+     * 
+     * @param type the internal name of the missing type
+     * @param cause the error reported by the resource loader
+     * @return the substitute header, its class name must be <code>type</code>
+     * @throws IOException to fail lookups that involve the type
+     */
+    ClassHeader resolve(String type, IOException cause) throws IOException;
+}
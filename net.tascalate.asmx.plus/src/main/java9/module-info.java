@@ -31,6 +31,7 @@
  */
 module net.tascalate.asmx.plus {
     requires transitive net.tascalate.asmx;
+    requires static jdk.jfr;
 
     exports net.tascalate.asmx.plus;
 }
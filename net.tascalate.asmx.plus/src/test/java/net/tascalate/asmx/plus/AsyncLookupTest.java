@@ -0,0 +1,144 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncLookupTest {
+    
+    ExecutorService executor;
+    ReadsLoader loader;
+    
+    @Before
+    public void setup() {
+        // A single thread is enough for any number of lookups in flight
+        executor = Executors.newSingleThreadExecutor();
+        loader = new ReadsLoader();
+    }
+    
+    @After
+    public void cleanup() {
+        executor.shutdown();
+    }
+    
+    @Test
+    public void testManyLookupsInFlight() throws Exception {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        ClassHierarchy reference = new ClassHierarchy(new ReadsLoader());
+        String[] types = InheritanceLookupTest.TYPES;
+        List<CompletableFuture<String>> results = new ArrayList<CompletableFuture<String>>();
+        List<CompletableFuture<Boolean>> subClasses = new ArrayList<CompletableFuture<Boolean>>();
+        for (String type1 : types) {
+            for (String type2 : types) {
+                results.add(hierarchy.getCommonSuperClassAsync(type1, type2, executor));
+                subClasses.add(hierarchy.isSubClassAsync(type1, type2, executor));
+            }
+        }
+        int idx = 0;
+        for (String type1 : types) {
+            for (String type2 : types) {
+                assertEquals(reference.getCommonSuperClass(type1, type2), results.get(idx).get(30, TimeUnit.SECONDS));
+                assertEquals(reference.isSubClass(type1, type2), subClasses.get(idx).get(30, TimeUnit.SECONDS));
+                idx++;
+            }
+        }
+        // In-flight loads are shared
+        for (Map.Entry<String, AtomicInteger> reads : loader.reads.entrySet()) {
+            assertEquals(reads.getKey(), 1, reads.getValue().get());
+        }
+    }
+    
+    @Test
+    public void testConsistentWithSynchronousApi() throws Exception {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        assertEquals("java/util/AbstractList", 
+                     hierarchy.getCommonSuperClassAsync("java/util/ArrayList", "java/util/LinkedList", executor).get());
+        int reads = loader.total.get();
+        assertEquals("java/util/Vector", hierarchy.getCommonSuperClass("java/util/Vector", "java/util/Stack"));
+        // Only the types that were not loaded asynchronously
+        assertEquals(reads + 2, loader.total.get());
+        
+        reads = loader.total.get();
+        assertEquals("java/lang/Object", 
+                     hierarchy.getCommonSuperClassAsync("[Ljava/util/Stack;", "java/util/ArrayList", executor).get());
+        assertEquals(reads, loader.total.get());
+    }
+    
+    @Test
+    public void testMissingType() throws Exception {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        try {
+            hierarchy.getCommonSuperClassAsync("java/util/ArrayList", "no/such/Type", executor).get();
+            fail("Missing type is resolved");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof UnresolvedTypeException);
+            assertTrue(ex.getCause().getCause() instanceof IOException);
+        }
+    }
+    
+    static class ReadsLoader extends InheritanceLookupTest.ClasspathResourceLoader {
+        final Map<String, AtomicInteger> reads = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger total = new AtomicInteger();
+        
+        ReadsLoader() {
+            super(ClassLoader.getSystemClassLoader());
+        }
+        
+        @Override
+        public InputStream getResourceAsStream(String name) throws IOException {
+            AtomicInteger counter = new AtomicInteger();
+            AtomicInteger previous = reads.putIfAbsent(name, counter);
+            (null == previous ? counter : previous).incrementAndGet();
+            total.incrementAndGet();
+            return super.getResourceAsStream(name);
+        }
+    }
+}
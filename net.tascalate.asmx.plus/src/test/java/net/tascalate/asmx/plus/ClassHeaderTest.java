@@ -0,0 +1,190 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.MethodVisitor;
+import net.tascalate.asmx.Opcodes;
+
+public class ClassHeaderTest {
+    
+    @Test
+    public void testJdkClasses() throws IOException {
+        String[] types = {
+            "java/lang/Object",
+            "java/lang/Math",
+            "java/lang/Double",
+            "java/util/List",
+            "java/util/HashMap",
+            "java/util/concurrent/ConcurrentHashMap",
+            "java/util/concurrent/ConcurrentHashMap$KeySetView",
+            "java/io/Externalizable",
+            "java/lang/annotation/Retention",
+            "net/tascalate/asmx/plus/InheritanceLookupTest$TestList"
+        };
+        for (String type : types) {
+            byte[] bytes = readClass(type);
+            assertSameHeader(new ClassReader(bytes), ClassHeader.read(new ByteArrayInputStream(bytes)));
+        }
+    }
+    
+    @Test
+    public void testGeneratedClass() throws IOException {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, 
+                 "pkg/Жук$中", null, 
+                 "pkg/Baseé", new String[] {"pkg/A", "pkg/😀"});
+        // Wide constants occupy two constant pool slots
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "m", "()V", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(Long.valueOf(Long.MAX_VALUE));
+        mv.visitInsn(Opcodes.POP2);
+        mv.visitLdcInsn(Double.valueOf(Math.E));
+        mv.visitInsn(Opcodes.POP2);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(2, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        byte[] bytes = cw.toByteArray();
+        
+        ClassHeader header = ClassHeader.read(new ByteArrayInputStream(bytes));
+        assertSameHeader(new ClassReader(bytes), header);
+        assertEquals("pkg/Жук$中", header.getClassName());
+    }
+    
+    @Test
+    public void testByteBuffers() throws IOException {
+        byte[] bytes = readClass("java/util/concurrent/ConcurrentHashMap");
+        ClassReader expected = new ClassReader(bytes);
+        
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 16);
+        direct.position(16);
+        direct.put(bytes);
+        direct.position(16);
+        assertSameHeader(expected, ClassHeader.read(direct));
+        assertEquals(16, direct.position());
+        
+        byte[] padded = new byte[bytes.length + 7];
+        System.arraycopy(bytes, 0, padded, 7, bytes.length);
+        ByteBuffer slice = ByteBuffer.wrap(padded, 7, bytes.length).slice();
+        assertSameHeader(expected, ClassHeader.read(slice));
+        assertSameHeader(expected, ClassHeader.read(slice.asReadOnlyBuffer()));
+    }
+    
+    @Test
+    public void testInvalidReferences() throws IOException {
+        // #1 Utf8 "pkg/A", #2 Class #1, #3 Long, #5 Class #3
+        assertEquals("pkg/A", ClassHeader.read(ByteBuffer.wrap(classFile(2)), "pkg/A.class").getClassName());
+        assertInvalid(classFile(1), "not Class");
+        assertInvalid(classFile(5), "not Utf8");
+        assertInvalid(classFile(4), "Invalid constant pool index 4");
+        assertInvalid(classFile(6), "Invalid constant pool index 6");
+        assertInvalid(classFile(0), "Invalid constant pool index 0");
+    }
+    
+    private static void assertInvalid(byte[] bytes, String message) {
+        try {
+            ClassHeader.read(new ByteArrayInputStream(bytes), "pkg/A.class");
+            fail("Malformed class file is read");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+            assertTrue(ex.getMessage(), ex.getMessage().contains("pkg/A.class"));
+        }
+        try {
+            ClassHeader.read(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip(), "pkg/A.class");
+            fail("Malformed class file is read");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+    
+    private static byte[] classFile(int thisClass) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(Opcodes.V1_8);
+        out.writeShort(6);
+        out.writeByte(1);
+        out.writeUTF("pkg/A");
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(5);
+        out.writeLong(42L);
+        out.writeByte(7);
+        out.writeShort(3);
+        out.writeShort(Opcodes.ACC_PUBLIC);
+        out.writeShort(thisClass);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+    
+    private static void assertSameHeader(ClassReader expected, ClassHeader actual) {
+        assertEquals(expected.getAccess(), actual.getAccess());
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getSuperName(), actual.getSuperName());
+        assertArrayEquals(expected.getInterfaces(), actual.getInterfaces());
+    }
+    
+    private static byte[] readClass(String type) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(type + ".class");
+        try {
+            // The exact bytes every ClassReader of the test is built from
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
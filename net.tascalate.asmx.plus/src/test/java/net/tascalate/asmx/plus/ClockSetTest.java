@@ -0,0 +1,81 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClockSetTest {
+    
+    @Test
+    public void testBounded() {
+        ClockSet set = new ClockSet(160);
+        for (int i = 0; i < 10000; i++) {
+            set.add("n" + i);
+            assertTrue(set.contains("n" + i));
+            assertTrue(set.size() <= 160);
+        }
+        // Recent names survive the overflow, nothing is dropped wholesale
+        assertTrue(set.size() > 100);
+        set.add("n9999");
+        assertTrue(set.size() <= 160);
+    }
+    
+    @Test
+    public void testHotNames() {
+        ClockSet set = new ClockSet(160);
+        for (int i = 0; i < 16; i++) {
+            set.add("hot" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            set.add("cold" + i);
+            // Hot names are checked between insertions
+            for (int j = 0; j < 16; j++) {
+                assertTrue("hot" + j, set.contains("hot" + j));
+            }
+        }
+        assertFalse(set.contains("cold0"));
+        assertTrue(set.contains("cold9999"));
+    }
+    
+    @Test
+    public void testDuplicates() {
+        ClockSet set = new ClockSet(16);
+        for (int i = 0; i < 100; i++) {
+            set.add("a");
+        }
+        assertEquals(1, set.size());
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompositeResourceLoaderTest {
+    
+    File jar1;
+    File jar2;
+    
+    @Before
+    public void setup() throws IOException {
+        jar1 = createJar("a/One.txt", "one", "shared/Both.txt", "first");
+        jar2 = createJar("b/Two.txt", "two", "shared/Both.txt", "second", "shared/Second.txt", "second");
+    }
+    
+    @After
+    public void cleanup() {
+        jar1.delete();
+        jar2.delete();
+    }
+    
+    @Test
+    public void testRouting() throws IOException {
+        CountingResourceLoader opaque = new CountingResourceLoader(
+            new InheritanceLookupTest.ClasspathResourceLoader(CompositeResourceLoaderTest.class.getClassLoader())
+        );
+        CompositeResourceLoader loader = new CompositeResourceLoader(
+            new JarResourceLoader(jar1), new JarResourceLoader(jar2), opaque
+        );
+        assertEquals("one", read(loader, "a/One.txt"));
+        assertEquals("two", read(loader, "b/Two.txt"));
+        // First element wins, split packages are resolved in order 
+        assertEquals("first", read(loader, "shared/Both.txt"));
+        assertEquals("second", read(loader, "shared/Second.txt"));
+        assertFalse(loader.hasResource("a/Missing.txt"));
+        // Resources of the opaque element are found by probing
+        assertTrue(loader.hasResource("net/tascalate/asmx/plus/CompositeResourceLoaderTest.class"));
+        
+        // Negative cache answers repeated misses
+        int probes = opaque.probes.get();
+        assertFalse(loader.hasResource("a/Missing.txt"));
+        assertEquals(probes, opaque.probes.get());
+    }
+    
+    @Test
+    public void testDirectRoute() throws IOException {
+        CountingResourceLoader first  = new IndexedCountingResourceLoader(new JarResourceLoader(jar1));
+        CountingResourceLoader second = new IndexedCountingResourceLoader(new JarResourceLoader(jar2));
+        CompositeResourceLoader loader = new CompositeResourceLoader(first, second);
+        assertEquals("two", read(loader, "b/Two.txt"));
+        assertEquals("two", read(loader, "b/Two.txt"));
+        // Single known owner is never probed
+        assertEquals(0, first.probes.get());
+        assertEquals(0, second.probes.get());
+        // Existence is still verified by the owner
+        assertTrue(loader.hasResource("b/Two.txt"));
+        assertFalse(loader.hasResource("b/Missing.txt"));
+    }
+    
+    @Test
+    public void testClassHierarchy() throws IOException {
+        CompositeResourceLoader loader = new CompositeResourceLoader(
+            new JarResourceLoader(jar1),
+            new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader())
+        );
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        assertEquals("java/util/AbstractCollection", hierarchy.getCommonSuperClass("java/util/LinkedList", "java/util/HashSet"));
+    }
+    
+    private static String read(ResourceLoader loader, String name) throws IOException {
+        return new String(ResourceLoaders.getResourceAsBytes(loader, name), "UTF-8");
+    }
+    
+    private static File createJar(String... content) throws IOException {
+        File result = File.createTempFile("asmx-test", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(result));
+        try {
+            for (int i = 0; i < content.length; i += 2) {
+                out.putNextEntry(new ZipEntry(content[i]));
+                out.write(content[i + 1].getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return result;
+    }
+    
+    static class IndexedCountingResourceLoader extends CountingResourceLoader implements IndexedResourceLoader {
+        IndexedCountingResourceLoader(IndexedResourceLoader delegate) {
+            super(delegate);
+        }
+        
+        public Set<String> getPackageNames() throws IOException {
+            return ((IndexedResourceLoader)delegate).getPackageNames();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loader that counts existence probes and reads of every resource of the delegate.
+ */
+class CountingResourceLoader implements ResourceLoader {
+    final ResourceLoader delegate;
+    final AtomicInteger probes = new AtomicInteger();
+    private final ConcurrentHashMap<String, AtomicInteger> reads = new ConcurrentHashMap<String, AtomicInteger>();
+    
+    CountingResourceLoader(ResourceLoader delegate) {
+        this.delegate = delegate;
+    }
+    
+    public boolean hasResource(String name) {
+        probes.incrementAndGet();
+        return delegate.hasResource(name);
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        AtomicInteger counter = reads.get(name);
+        if (null == counter) {
+            AtomicInteger previous = reads.putIfAbsent(name, counter = new AtomicInteger());
+            if (null != previous) {
+                counter = previous;
+            }
+        }
+        counter.incrementAndGet();
+        return delegate.getResourceAsStream(name);
+    }
+    
+    int reads(String name) {
+        AtomicInteger counter = reads.get(name);
+        return null == counter ? 0 : counter.get();
+    }
+    
+    /**
+     * Returns read counts of all resources read at least once.
+     */
+    Map<String, AtomicInteger> reads() {
+        return reads;
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class HierarchyMonitorTest {
+    
+    @Test
+    public void testStatistics() {
+        ResourceLoader loader = new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader());
+        HierarchyStatistics stats = new HierarchyStatistics();
+        ClassHierarchy hierarchy = new ClassHierarchy(HierarchyMonitors.monitored(loader, stats)).withMonitor(stats);
+        
+        String[] types = InheritanceLookupTest.TYPES;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String type1 : types) {
+                for (String type2 : types) {
+                    hierarchy.getCommonSuperClass(type1, type2);
+                }
+            }
+        }
+        int pairs = types.length * types.length;
+        assertEquals(2 * pairs, stats.lookupMisses().count() + stats.lookupHits().count());
+        // Pairs are symmetrical, so at most a half of the first pass are misses
+        assertTrue(stats.lookupMisses().count() <= (pairs + types.length) / 2);
+        assertTrue(stats.lookupHits().count() >= pairs);
+        
+        // Every class is read once, built-in types are not read at all
+        long loads = stats.typeLoads().count();
+        assertTrue(loads > 0);
+        assertEquals(loads, stats.resourceReads().count());
+        assertEquals(loads, hierarchy.loadedTypes().size());
+        assertEquals(1, stats.bytesRead().size());
+        assertTrue(stats.bytesRead().get(loader) > 0);
+        assertEquals(stats.totalBytesRead(), stats.bytesRead().get(loader).longValue());
+    }
+    
+    @Test
+    public void testMonitoredLoaderCapabilities() throws IOException {
+        ResourceLoader loader = new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader());
+        HierarchyStatistics stats = new HierarchyStatistics();
+        ResourceLoader monitored = HierarchyMonitors.monitored(loader, stats);
+        assertFalse(monitored instanceof ByteBufferResourceLoader);
+        assertFalse(monitored instanceof StampedResourceLoader);
+        
+        // Only the header is read from streams
+        ResourceLoaders.readClassHeader(monitored, "java/util/concurrent/ConcurrentHashMap");
+        long size = 0;
+        InputStream in = loader.getResourceAsStream("java/util/concurrent/ConcurrentHashMap.class");
+        try {
+            while (in.read() >= 0) {
+                size++;
+            }
+        } finally {
+            in.close();
+        }
+        assertTrue(stats.totalBytesRead() > 0);
+        assertTrue(stats.totalBytesRead() < size);
+        
+        monitored = HierarchyMonitors.monitored(new OverlayResourceLoader(loader), stats);
+        assertTrue(monitored instanceof ByteBufferResourceLoader);
+        assertTrue(monitored instanceof StampedResourceLoader);
+    }
+    
+    @Test
+    public void testMonitoredViewSharesCaches() {
+        ClassHierarchy hierarchy = new ClassHierarchy(new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader()));
+        assertSame(hierarchy, hierarchy.withMonitor(null));
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        
+        HierarchyStatistics stats = new HierarchyStatistics();
+        ClassHierarchy monitored = hierarchy.withMonitor(stats);
+        assertEquals("java/util/AbstractList", monitored.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        assertEquals("java/util/AbstractList", monitored.shareWith(new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader()))
+                                                       .getCommonSuperClass("java/util/Vector", "java/util/ArrayList"));
+        assertEquals(2, stats.lookupHits().count());
+        assertEquals(0, stats.lookupMisses().count());
+        assertEquals(0, stats.typeLoads().count());
+        
+        // Original hierarchy is not measured
+        hierarchy.getCommonSuperClass("java/util/HashMap", "java/util/TreeMap");
+        assertEquals(0, stats.lookupMisses().count());
+    }
+    
+    @Test
+    public void testMonitorOfRequestingView() throws IOException {
+        ClassHierarchy hierarchy = new ClassHierarchy(new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader()));
+        // Created by the original view, super-types are not loaded yet
+        hierarchy.getTypeInfo("java/util/ArrayList");
+        hierarchy.getTypeInfo("java/util/Vector");
+        
+        HierarchyStatistics stats = new HierarchyStatistics();
+        ClassHierarchy monitored = hierarchy.withMonitor(stats);
+        assertEquals("java/util/AbstractList", monitored.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        // Super-types are loaded on behalf of the monitored view
+        long loads = stats.typeLoads().count();
+        assertEquals(hierarchy.loadedTypes().size() - 2, loads);
+        
+        // Created by the monitored view, but requested by the original one
+        monitored.getTypeInfo("java/util/HashMap");
+        assertEquals(loads + 1, stats.typeLoads().count());
+        assertEquals("java/util/HashMap", hierarchy.getCommonSuperClass("java/util/HashMap", "java/util/LinkedHashMap"));
+        assertEquals(loads + 1, stats.typeLoads().count());
+        assertEquals(1, stats.lookupMisses().count());
+    }
+    
+    @Test
+    public void testLayeredLookups() {
+        ClassHierarchy parent = new ClassHierarchy(new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader()));
+        assertEquals("java/util/AbstractList", parent.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        
+        HierarchyStatistics stats = new HierarchyStatistics();
+        ClassHierarchy child = new ClassHierarchy(parent, new SyntheticHierarchy().addClass("syn/MyList", "java/util/ArrayList"))
+            .withMonitor(stats);
+        // Cached by the parent
+        assertEquals("java/util/AbstractList", child.getCommonSuperClass("java/util/Vector", "java/util/ArrayList"));
+        assertEquals(1, stats.lookupHits().count());
+        assertEquals(0, stats.lookupMisses().count());
+        assertEquals(0, stats.typeLoads().count());
+        
+        assertEquals("java/util/AbstractList", child.getCommonSuperClass("syn/MyList", "java/util/Vector"));
+        assertEquals("java/util/AbstractList", child.getCommonSuperClass("syn/MyList", "java/util/Vector"));
+        assertEquals(2, stats.lookupHits().count());
+        assertEquals(1, stats.lookupMisses().count());
+        assertEquals(1, stats.typeLoads().count());
+    }
+    
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileNanos(50));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5000);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals((90 * 100 + 10 * 5000) / 100, histogram.meanNanos());
+        assertEquals(127, histogram.percentileNanos(50));
+        assertEquals(127, histogram.percentileNanos(90));
+        assertEquals(8191, histogram.percentileNanos(99));
+    }
+    
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        Assume.assumeTrue(HierarchyMonitors.isFlightRecorderAvailable());
+        ResourceLoader loader = new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader());
+        HierarchyMonitor monitor = HierarchyMonitors.flightRecorder(0, TimeUnit.NANOSECONDS);
+        ClassHierarchy hierarchy = new ClassHierarchy(HierarchyMonitors.monitored(loader, monitor)).withMonitor(monitor);
+        
+        File file = File.createTempFile("asmx-test", ".jfr");
+        try {
+            Recording recording = new Recording();
+            try {
+                recording.enable("net.tascalate.asmx.Lookup");
+                recording.enable("net.tascalate.asmx.TypeLoad");
+                recording.enable("net.tascalate.asmx.ResourceRead");
+                recording.start();
+                hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList");
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+            
+            Set<String> typesLoaded = new HashSet<String>();
+            Set<String> resourcesRead = new HashSet<String>();
+            int lookups = 0;
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            for (RecordedEvent event : events) {
+                String name = event.getEventType().getName();
+                if (name.equals("net.tascalate.asmx.Lookup")) {
+                    assertEquals("java/util/ArrayList", event.getString("type1"));
+                    assertEquals(false, event.getBoolean("hit"));
+                    // Begun before and ended after the lookup, that loaded types
+                    assertTrue(event.getDuration().toNanos() > 0);
+                    lookups++;
+                } else if (name.equals("net.tascalate.asmx.TypeLoad")) {
+                    typesLoaded.add(event.getString("type"));
+                } else if (name.equals("net.tascalate.asmx.ResourceRead")) {
+                    assertTrue(event.getLong("bytes") > 0);
+                    resourcesRead.add(event.getString("resource"));
+                }
+            }
+            assertEquals(1, lookups);
+            assertTrue(typesLoaded.contains("java/util/AbstractList"));
+            assertTrue(resourcesRead.contains("java/util/AbstractList.class"));
+            assertEquals(typesLoaded.size(), resourcesRead.size());
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void testFlightRecorderSettings() throws IOException {
+        Assume.assumeTrue(HierarchyMonitors.isFlightRecorderAvailable());
+        ResourceLoader loader = new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader());
+        HierarchyMonitor monitor = HierarchyMonitors.flightRecorder(0, TimeUnit.NANOSECONDS);
+        ClassHierarchy hierarchy = new ClassHierarchy(HierarchyMonitors.monitored(loader, monitor)).withMonitor(monitor);
+        
+        File file = File.createTempFile("asmx-test", ".jfr");
+        try {
+            Recording recording = new Recording();
+            try {
+                recording.enable("net.tascalate.asmx.Lookup");
+                recording.enable("net.tascalate.asmx.TypeLoad").withThreshold(Duration.ofHours(1));
+                recording.disable("net.tascalate.asmx.ResourceRead");
+                recording.start();
+                hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList");
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+            
+            int lookups = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                String name = event.getEventType().getName();
+                assertNotEquals(name, "net.tascalate.asmx.TypeLoad", name);
+                assertNotEquals(name, "net.tascalate.asmx.ResourceRead", name);
+                if (name.equals("net.tascalate.asmx.Lookup")) {
+                    lookups++;
+                }
+            }
+            assertEquals(1, lookups);
+        } finally {
+            file.delete();
+        }
+    }
+}
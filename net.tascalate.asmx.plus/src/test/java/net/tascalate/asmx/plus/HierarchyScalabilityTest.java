@@ -0,0 +1,162 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Worst-case shapes of hierarchies: deep chains, diamond-heavy interface 
+ * lattices and very wide sibling sets. Results are checked against the naive 
+ * reference of {@link SyntheticHierarchy}, and every class file must be read 
+ * at most once whatever the shape and the number of lookups. Throughput is 
+ * measured by the benchmarks module, not here.
+ */
+public class HierarchyScalabilityTest {
+    
+    @Test(timeout = 10000)
+    public void testDeepChain() {
+        int depth = 120;
+        SyntheticHierarchy model = SyntheticHierarchy.chain(depth);
+        List<String[]> pairs = new ArrayList<String[]>();
+        for (int i = 0; i < depth; i += 5) {
+            for (int j = 0; j < depth; j += 7) {
+                pairs.add(new String[] {"syn/chain/C" + i, "syn/chain/C" + j});
+                pairs.add(new String[] {"syn/chain/C" + i, "syn/chain/I" + j});
+                pairs.add(new String[] {"syn/chain/I" + i, "syn/chain/I" + j});
+            }
+        }
+        pairs.add(new String[] {"syn/chain/C" + (depth - 1), "syn/chain/C0"});
+        pairs.add(new String[] {"syn/chain/I0", "syn/chain/C" + (depth - 1)});
+        check(model, pairs);
+    }
+    
+    @Test(timeout = 10000)
+    public void testDiamondLattice() {
+        SyntheticHierarchy model = SyntheticHierarchy.lattice(12, 4);
+        List<String> types = model.typeNames();
+        List<String[]> pairs = new ArrayList<String[]>();
+        for (String type1 : types) {
+            for (String type2 : model.classNames()) {
+                pairs.add(new String[] {type1, type2});
+                pairs.add(new String[] {type2, type1});
+            }
+        }
+        check(model, pairs);
+    }
+    
+    @Test(timeout = 10000)
+    public void testSiblings() {
+        int count = 10000;
+        SyntheticHierarchy model = SyntheticHierarchy.siblings(count, 16);
+        check(model, randomPairs(model.classNames(), 2 * count, count));
+    }
+    
+    @Test(timeout = 10000)
+    public void testConcurrentLookups() throws Exception {
+        final int threads = 4;
+        final SyntheticHierarchy model = SyntheticHierarchy.siblings(5000, 16);
+        final List<String[]> pairs = randomPairs(model.classNames(), 10000, 42);
+        final List<Set<String>> expected = new ArrayList<Set<String>>(pairs.size());
+        for (String[] pair : pairs) {
+            expected.add(model.referenceCommonSuperClasses(pair[0], pair[1]));
+        }
+        CountingResourceLoader loader = new CountingResourceLoader(model);
+        final ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        // Every thread queries all pairs starting from its own offset
+                        int size = pairs.size();
+                        for (int i = 0; i < size; i++) {
+                            int idx = (i + offset * size / threads) % size;
+                            String[] pair = pairs.get(idx);
+                            String actual = hierarchy.getCommonSuperClass(pair[0], pair[1]);
+                            assertTrue(pair[0] + " / " + pair[1] + " -> " + actual, expected.get(idx).contains(actual));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertReadOnce(loader);
+    }
+    
+    private static void check(SyntheticHierarchy model, List<String[]> pairs) {
+        CountingResourceLoader loader = new CountingResourceLoader(model);
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        for (String[] pair : pairs) {
+            Set<String> expected = model.referenceCommonSuperClasses(pair[0], pair[1]);
+            String actual = hierarchy.getCommonSuperClass(pair[0], pair[1]);
+            assertTrue(pair[0] + " / " + pair[1] + " -> " + actual + ", expected one of " + expected, expected.contains(actual));
+            assertEquals(model.isSubtype(pair[0], pair[1]), hierarchy.isSubClass(pair[0], pair[1]));
+        }
+        assertReadOnce(loader);
+    }
+    
+    private static void assertReadOnce(CountingResourceLoader loader) {
+        for (Map.Entry<String, AtomicInteger> entry : loader.reads().entrySet()) {
+            assertEquals(entry.getKey(), 1, entry.getValue().get());
+        }
+    }
+    
+    private static List<String[]> randomPairs(List<String> types, int count, long seed) {
+        Random random = new Random(seed);
+        List<String[]> result = new ArrayList<String[]>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new String[] {types.get(random.nextInt(types.size())), types.get(random.nextInt(types.size()))});
+        }
+        return result;
+    }
+}
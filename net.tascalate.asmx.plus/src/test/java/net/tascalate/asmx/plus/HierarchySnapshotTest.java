@@ -0,0 +1,156 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HierarchySnapshotTest {
+    
+    File file;
+    
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("asmx-test", ".hierarchy");
+    }
+    
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+    
+    @Test
+    public void testWarmStart() throws IOException {
+        StampedLoader loader = new StampedLoader();
+        ClassHierarchy original = new ClassHierarchy(loader);
+        String[][] queries = queries();
+        String[] expected = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = original.getCommonSuperClass(queries[i][0], queries[i][1]);
+        }
+        HierarchySnapshot.write(original, file);
+        
+        HierarchySnapshot snapshot = HierarchySnapshot.open(file);
+        assertTrue(snapshot.isStamped());
+        assertEquals(original.loadedTypes().size(), snapshot.size());
+        
+        loader.reads.set(0);
+        ClassHierarchy restored = new ClassHierarchy(loader, snapshot);
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(expected[i], restored.getCommonSuperClass(queries[i][0], queries[i][1]));
+        }
+        // Everything came from the snapshot
+        assertEquals(0, loader.reads.get());
+    }
+    
+    @Test
+    public void testStaleEntries() throws IOException {
+        StampedLoader loader = new StampedLoader();
+        ClassHierarchy original = new ClassHierarchy(loader);
+        assertEquals("java/util/AbstractCollection", original.getCommonSuperClass("java/util/LinkedList", "java/util/HashSet"));
+        HierarchySnapshot.write(original, file);
+        
+        // Every resource is "changed" now
+        loader.stamp.incrementAndGet();
+        loader.reads.set(0);
+        ClassHierarchy restored = new ClassHierarchy(loader, HierarchySnapshot.open(file));
+        assertEquals("java/util/AbstractCollection", restored.getCommonSuperClass("java/util/LinkedList", "java/util/HashSet"));
+        assertTrue(loader.reads.get() > 0);
+    }
+    
+    @Test
+    public void testExplicitTypes() throws IOException {
+        List<String> types = Arrays.asList("java/util/LinkedList", "java/util/HashSet");
+        ByteArrayOutputStream fresh = new ByteArrayOutputStream();
+        HierarchySnapshot.write(new ClassHierarchy(new StampedLoader()), types, fresh);
+        
+        // Unrelated types are loaded, types are requested in other order
+        ClassHierarchy warm = new ClassHierarchy(new StampedLoader());
+        warm.getCommonSuperClass("java/lang/Integer", "java/lang/Long");
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        HierarchySnapshot.write(warm, Arrays.asList("java/util/HashSet", "java/util/LinkedList"), other);
+        assertArrayEquals(fresh.toByteArray(), other.toByteArray());
+        
+        // Super-types are included, so the snapshot alone answers queries
+        HierarchySnapshot snapshot = HierarchySnapshot.read(new ByteArrayInputStream(fresh.toByteArray()));
+        StampedLoader loader = new StampedLoader();
+        ClassHierarchy restored = new ClassHierarchy(loader, snapshot);
+        assertEquals("java/util/AbstractCollection", restored.getCommonSuperClass("java/util/LinkedList", "java/util/HashSet"));
+        assertTrue(restored.isSubClass("java/util/LinkedList", "java/lang/Iterable"));
+        assertEquals(0, loader.reads.get());
+    }
+    
+    private static String[][] queries() {
+        return new String[][] {
+            {"java/util/LinkedList", "java/util/HashSet"},
+            {"java/util/List", "java/util/Set"},
+            {"java/util/TreeMap", "java/util/HashMap"},
+            {"java/lang/Integer", "java/lang/Long"},
+            {"java/io/FileNotFoundException", "java/io/EOFException"},
+            {"net/tascalate/asmx/plus/InheritanceLookupTest$TestList", "java/util/ArrayDeque"}
+        };
+    }
+    
+    static class StampedLoader extends InheritanceLookupTest.ClasspathResourceLoader implements StampedResourceLoader {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicLong stamp = new AtomicLong(1);
+        
+        StampedLoader() {
+            super(ClassLoader.getSystemClassLoader());
+        }
+        
+        @Override
+        public InputStream getResourceAsStream(String name) throws IOException {
+            reads.incrementAndGet();
+            return super.getResourceAsStream(name);
+        }
+        
+        public long getResourceStamp(String name) {
+            return stamp.get();
+        }
+    }
+}
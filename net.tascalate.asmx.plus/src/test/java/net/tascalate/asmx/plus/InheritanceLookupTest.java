@@ -31,24 +31,57 @@
  */
 package net.tascalate.asmx.plus;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Closeable;
 import java.io.Externalizable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 public class InheritanceLookupTest {
 
+    static final String[] TYPES = {
+        "java/lang/Object", "java/lang/Iterable", "java/util/Collection", "java/util/List", 
+        "java/util/Set", "java/util/Queue", "java/util/Deque", "java/util/AbstractCollection", 
+        "java/util/AbstractList", "java/util/ArrayList", "java/util/LinkedList", "java/util/HashSet",
+        "java/util/LinkedHashSet", "java/util/ArrayDeque", "java/io/Serializable", "java/lang/Cloneable",
+        "java/lang/String", "java/lang/CharSequence", "java/lang/Comparable", "java/lang/Integer", 
+        "net/tascalate/asmx/plus/InheritanceLookupTest$TestList", "[Ljava/util/List;", "[Ljava/util/ArrayList;", "[I"
+    };
+
     ClassHierarchy lookup;
     
     @Before
@@ -64,6 +97,110 @@ public class InheritanceLookupTest {
         assertEquals(info1, info2);
     }
 
+    @Test
+    public void testConcurrentTypeLoading() throws Exception {
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        CountingResourceLoader loader = new CountingResourceLoader(lookup.loader());
+        final ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ClassHierarchy.TypeInfo>> results = new ArrayList<Future<ClassHierarchy.TypeInfo>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<ClassHierarchy.TypeInfo>() {
+                    public ClassHierarchy.TypeInfo call() throws Exception {
+                        barrier.await();
+                        ClassHierarchy.TypeInfo result = hierarchy.getTypeInfo("[[Ljava/util/concurrent/ConcurrentSkipListMap;");
+                        // Super-types are requested concurrently as well
+                        hierarchy.getTypeInfo("java/util/concurrent/ConcurrentSkipListMap").flattenHierarchy();
+                        return result;
+                    }
+                }));
+            }
+            ClassHierarchy.TypeInfo expected = results.get(0).get();
+            for (Future<ClassHierarchy.TypeInfo> result : results) {
+                // Single in-flight load is shared by all requests
+                assertSame(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loader.reads("java/util/concurrent/ConcurrentSkipListMap.class"));
+        assertTrue(loader.reads().size() > 1);
+        for (Map.Entry<String, AtomicInteger> entry : loader.reads().entrySet()) {
+            assertEquals(entry.getKey(), 1, entry.getValue().get());
+        }
+    }
+
+    @Test
+    public void testVirtualThreadStress() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            executor = null;
+        }
+        Assume.assumeTrue("Virtual threads are available since JDK 21", null != executor);
+        Assume.assumeTrue(HierarchyMonitors.isFlightRecorderAvailable());
+        final ClassHierarchy hierarchy = new ClassHierarchy(new ClasspathResourceLoader(ClassLoader.getSystemClassLoader()) {
+            @Override
+            public InputStream getResourceAsStream(String name) throws IOException {
+                try {
+                    // Slow blocking I/O
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return super.getResourceAsStream(name);
+            }
+        });
+        final int tasks = 2000;
+        final CyclicBarrier barrier = new CyclicBarrier(Math.min(tasks, 64));
+        File file = File.createTempFile("asmx-test", ".jfr");
+        Recording recording = new Recording();
+        try {
+            // Any park of a virtual thread that can't leave its carrier, however short
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            try {
+                List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+                for (int i = 0; i < tasks; i++) {
+                    final int seed = i;
+                    results.add(executor.submit(new Callable<String[]>() {
+                        public String[] call() throws Exception {
+                            if (seed < 64) {
+                                barrier.await();
+                            }
+                            String type1 = TYPES[seed % TYPES.length];
+                            String type2 = TYPES[(seed / TYPES.length) % TYPES.length];
+                            return new String[] {
+                                type1, type2, 
+                                hierarchy.getCommonSuperClass(type1, type2), 
+                                String.valueOf(hierarchy.isSubClass(type1, type2))
+                            };
+                        }
+                    }));
+                }
+                for (Future<String[]> result : results) {
+                    String[] values = result.get(60, TimeUnit.SECONDS);
+                    assertEquals(lookup.getCommonSuperClass(values[0], values[1]), values[2]);
+                    assertEquals(String.valueOf(lookup.isSubClass(values[0], values[1])), values[3]);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+            
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                assertFalse("Pinned: " + event, event.getEventType().getName().equals("jdk.VirtualThreadPinned"));
+            }
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+
     @Test
     public void testCommonSuperInterface() throws IOException {
         assertEquals("java/util/Collection", lookup.getCommonSuperClass("java/util/List", "java/util/Set"));
@@ -87,6 +224,52 @@ public class InheritanceLookupTest {
         assertEquals("java/util/Queue", lookup.getCommonSuperClass("net/tascalate/asmx/plus/InheritanceLookupTest$TestList", "java/util/Queue"));
     }
     
+    @Test
+    public void testFlattenedHierarchyMatching() throws IOException, ClassNotFoundException {
+        for (String type1 : TYPES) {
+            ClassHierarchy.TypeInfo info1 = lookup.getTypeInfo(type1);
+            assertSame(info1.flattenHierarchy(), info1.flattenHierarchy());
+            for (String type2 : TYPES) {
+                Set<String> expected = referenceCommonSuperClasses(type1, type2);
+                String actual = lookup.getCommonSuperClass(type1, type2);
+                assertTrue(type1 + " & " + type2 + " -> " + actual + ", expected one of " + expected, expected.contains(actual));
+            }
+        }
+    }
+    
+    @Test
+    public void testFlattenedHierarchyOrder() throws IOException {
+        ClassHierarchy hierarchy = new ClassHierarchy(new SyntheticHierarchy()
+            .addInterface("syn/I0")
+            .addInterface("syn/I1", "syn/I0")
+            .addInterface("syn/K", "syn/I0")
+            .addInterface("syn/J")
+            .addClass("syn/A", SyntheticHierarchy.OBJECT, "syn/J")
+            .addClass("syn/B", "syn/A", "syn/K", "syn/I1"));
+        // Classes from the type up, then sub-interfaces before their super-interfaces,
+        // ties are ordered by depth, then by name
+        assertArrayEquals(new String[] {"syn/B", "syn/A", "syn/I1", "syn/K", "syn/I0", "syn/J", "java/lang/Object"},
+                          namesOf(hierarchy.getTypeInfo("syn/B").flattenHierarchy()));
+        assertArrayEquals(new String[] {"syn/K", "syn/I0", "java/lang/Object"},
+                          namesOf(hierarchy.getTypeInfo("syn/K").flattenHierarchy()));
+    }
+    
+    @Test
+    public void testIsSubClass() throws ClassNotFoundException {
+        for (String type1 : TYPES) {
+            for (String type2 : TYPES) {
+                // Same as the JVM says for loaded classes
+                assertEquals(type1 + " <: " + type2, 
+                             isSubtype(classOf(type1), classOf(type2)), 
+                             lookup.isSubClass(type1, type2));
+            }
+        }
+        assertTrue(lookup.isSubClass("java/util/LinkedHashSet", "java/util/HashSet"));
+        assertTrue(lookup.isSuperClass("java/util/Collection", "java/util/ArrayList"));
+        assertFalse(lookup.isSubClass("java/util/ArrayList", "java/util/Set"));
+        assertFalse(lookup.isSubClass("java/util/List", "java/util/AbstractList"));
+    }
+    
     @Test
     public void testArrays() throws IOException {
         ClassHierarchy.TypeInfo info1 = lookup.getTypeInfo("[Ljava/util/List;");
@@ -124,7 +307,7 @@ public class InheritanceLookupTest {
     
     
     @Test
-    public void testTypeInfo() throws IOException {
+    public void testTypeInfo() throws IOException, ClassNotFoundException {
         ClassHierarchy.TypeInfo info1 = lookup.getTypeInfo("java/util/LinkedList");
         assertTrue(info1.isSubclassOf(lookup.getTypeInfo("java/lang/Object")));
         assertTrue(info1.isSubclassOf(lookup.getTypeInfo("java/util/AbstractCollection")));
@@ -134,13 +317,111 @@ public class InheritanceLookupTest {
         ClassHierarchy.TypeInfo info3 = lookup.getTypeInfo("net/tascalate/asmx/plus/InheritanceLookupTest$TestList");
         ClassHierarchy.TypeInfo info4 = lookup.getTypeInfo("java/util/TreeMap");
         
-        System.out.println(info1.flattenHierarchy());
-        System.out.println(info2.flattenHierarchy());
-        System.out.println(info3.flattenHierarchy());
-        System.out.println(info4.flattenHierarchy());
+        String[] flattened = namesOf(info1.flattenHierarchy());
+        assertArrayEquals(new String[] {"java/util/LinkedList", "java/util/AbstractSequentialList", "java/util/AbstractList", "java/util/AbstractCollection"}, 
+                          Arrays.copyOf(flattened, 4));
+        assertEquals("java/lang/Object", flattened[flattened.length - 1]);
+        
+        for (ClassHierarchy.TypeInfo info : new ClassHierarchy.TypeInfo[] {info1, info2, info3, info4}) {
+            // Every type precedes all its super-types
+            String[] types = namesOf(info.flattenHierarchy());
+            for (int i = 0; i < types.length; i++) {
+                for (int j = i + 1; j < types.length; j++) {
+                    assertFalse(types[i] + " after " + types[j], isSubtype(classOf(types[j]), classOf(types[i])));
+                }
+            }
+        }
         
-        System.out.println(lookup.getCommonSuperClass("java/util/LinkedList", "java/util/LinkedHashSet"));
-        System.out.println(lookup.getCommonSuperClass("java/util/List", "java/util/Set"));
+        assertEquals("java/util/AbstractCollection", lookup.getCommonSuperClass("java/util/LinkedList", "java/util/LinkedHashSet"));
+        assertEquals("java/util/Collection", lookup.getCommonSuperClass("java/util/List", "java/util/Set"));
+    }
+    
+    static String[] namesOf(ClassHierarchy.TypeInfo[] types) {
+        String[] result = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            result[i] = types[i].name;
+        }
+        return result;
+    }
+    
+    /**
+     * Acceptable results of the common super-class lookup by the plain search 
+     * over loaded classes, the same rules as {@link SyntheticHierarchy#referenceCommonSuperClasses(String, String)}.
+     */
+    static Set<String> referenceCommonSuperClasses(String type1, String type2) throws ClassNotFoundException {
+        Class<?> class1 = classOf(type1);
+        Class<?> class2 = classOf(type2);
+        if (isSubtype(class1, class2)) {
+            return Collections.singleton(type2);
+        }
+        if (isSubtype(class2, class1)) {
+            return Collections.singleton(type1);
+        }
+        if (!class1.isInterface()) {
+            for (Class<?> c = class1.getSuperclass(); null != c && Object.class != c; c = c.getSuperclass()) {
+                if (isSubtype(class2, c)) {
+                    return Collections.singleton(internalNameOf(c));
+                }
+            }
+        }
+        Set<Class<?>> common = new HashSet<Class<?>>();
+        for (Class<?> s : interfacesOf(class1, new HashSet<Class<?>>())) {
+            if (isSubtype(class2, s)) {
+                common.add(s);
+            }
+        }
+        // Minimal ones are not super-types of other common interfaces
+        Set<String> result = new HashSet<String>();
+        search:
+        for (Class<?> candidate : common) {
+            for (Class<?> other : common) {
+                if (other != candidate && candidate.isAssignableFrom(other)) {
+                    continue search;
+                }
+            }
+            result.add(internalNameOf(candidate));
+        }
+        return result.isEmpty() ? Collections.singleton("java/lang/Object") : result;
+    }
+    
+    static Class<?> classOf(String type) throws ClassNotFoundException {
+        return Class.forName(type.replace('/', '.'), false, InheritanceLookupTest.class.getClassLoader());
+    }
+    
+    /**
+     * Sub-typing of the JVM, except that arrays implement no interfaces: 
+     * the hierarchy models them as direct sub-classes of <code>java/lang/Object</code>.
+     */
+    static boolean isSubtype(Class<?> type, Class<?> base) {
+        if (!type.isArray()) {
+            return base.isAssignableFrom(type);
+        }
+        if (!base.isArray()) {
+            return base == Object.class;
+        }
+        Class<?> element = type.getComponentType();
+        return element.isPrimitive() ? type == base : isSubtype(element, base.getComponentType());
+    }
+    
+    private static Set<Class<?>> interfacesOf(Class<?> type, Set<Class<?>> result) {
+        if (type.isArray()) {
+            // See isSubtype
+            return result;
+        }
+        if (type.isInterface()) {
+            result.add(type);
+        }
+        if (null != type.getSuperclass()) {
+            interfacesOf(type.getSuperclass(), result);
+        }
+        for (Class<?> itype : type.getInterfaces()) {
+            interfacesOf(itype, result);
+        }
+        return result;
+    }
+    
+    private static String internalNameOf(Class<?> type) {
+        return type.getName().replace('.', '/');
     }
     
     static class TestList<T> extends LinkedList<T> implements Externalizable, Closeable {
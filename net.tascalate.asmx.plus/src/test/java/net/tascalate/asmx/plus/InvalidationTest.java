@@ -0,0 +1,208 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InvalidationTest {
+    
+    @Test
+    public void testRedefinedClass() {
+        OverlayResourceLoader loader = new OverlayResourceLoader(SyntheticHierarchy.chain(40));
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, cacheSpec());
+        assertEquals(chain(10), hierarchy.getCommonSuperClass(chain(10), chain(20)));
+        assertEquals(chain(30), hierarchy.getCommonSuperClass(chain(30), chain(35)));
+        assertEquals(chain(24), hierarchy.getCommonSuperClass(chain(24), chain(39)));
+        assertEquals("[L" + chain(20) + ";", hierarchy.getCommonSuperClass("[L" + chain(30) + ";", "[L" + chain(20) + ";"));
+        assertEquals(4, hierarchy.getLookupCacheStats().getSize());
+        
+        // Not bound to the hierarchy, so the previous version is still used
+        loader.putClass(OverlayResourceLoaderTest.classBytes(chain(25), SyntheticHierarchy.OBJECT, "syn/chain/I25"));
+        assertEquals(chain(24), hierarchy.getCommonSuperClass(chain(24), chain(39)));
+        
+        hierarchy.invalidate(chain(25));
+        // Only lookups that don't involve sub-types are kept
+        assertEquals(1, hierarchy.getLookupCacheStats().getSize());
+        Set<String> loaded = loadedTypes(hierarchy);
+        assertTrue(loaded.contains(chain(24)));
+        assertTrue(loaded.contains("syn/chain/I25"));
+        assertFalse(loaded.contains(chain(25)));
+        assertFalse(loaded.contains(chain(39)));
+        
+        assertEquals("syn/chain/I24", hierarchy.getCommonSuperClass(chain(24), chain(39)));
+        assertEquals(chain(30), hierarchy.getCommonSuperClass(chain(30), chain(35)));
+        assertEquals(chain(10), hierarchy.getCommonSuperClass(chain(10), chain(20)));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("[L" + chain(30) + ";", "[L" + chain(20) + ";"));
+        assertTrue(hierarchy.isSubClass(chain(30), chain(25)));
+        assertFalse(hierarchy.isSubClass(chain(30), chain(10)));
+    }
+    
+    @Test
+    public void testChangedSuperType() {
+        OverlayResourceLoader loader = new OverlayResourceLoader(SyntheticHierarchy.chain(20));
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, cacheSpec());
+        assertEquals(chain(5), hierarchy.getCommonSuperClass(chain(5), chain(15)));
+        
+        // C10 and its sub-types don't extend C9 anymore
+        loader.putClass(OverlayResourceLoaderTest.classBytes(chain(10), "syn/Root"));
+        loader.putClass(OverlayResourceLoaderTest.classBytes("syn/Root", SyntheticHierarchy.OBJECT));
+        hierarchy.invalidate(chain(10));
+        assertEquals("syn/chain/I5", hierarchy.getCommonSuperClass(chain(5), chain(15)));
+        assertEquals(chain(12), hierarchy.getCommonSuperClass(chain(12), chain(15)));
+        assertTrue(hierarchy.isSubClass(chain(19), "syn/Root"));
+        
+        // Edges to the previous super-class are gone
+        hierarchy.invalidate(chain(9));
+        Set<String> loaded = loadedTypes(hierarchy);
+        assertFalse(loaded.contains(chain(9)));
+        assertTrue(loaded.contains(chain(10)));
+        assertTrue(loaded.contains(chain(15)));
+        assertEquals(2, hierarchy.getLookupCacheStats().getSize());
+        
+        // Edges to the new super-class are in place
+        hierarchy.invalidate("syn/Root");
+        loaded = loadedTypes(hierarchy);
+        assertFalse(loaded.contains(chain(10)));
+        assertFalse(loaded.contains(chain(15)));
+        assertTrue(loaded.contains(chain(5)));
+        assertEquals(0, hierarchy.getLookupCacheStats().getSize());
+    }
+    
+    @Test
+    public void testMissingSuperType() {
+        OverlayResourceLoader loader = new OverlayResourceLoader(SyntheticHierarchy.chain(10));
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, null, cacheSpec(), UnresolvedTypePolicy.ASSUME_OBJECT);
+        loader.putClass(OverlayResourceLoaderTest.classBytes("syn/Sub", "syn/Generated"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("syn/Sub", chain(5)));
+        
+        loader.putClass(OverlayResourceLoaderTest.classBytes("syn/Generated", chain(3)));
+        hierarchy.invalidate("syn/Generated");
+        // Sub-types of the substitute are reloaded as well
+        assertEquals(chain(3), hierarchy.getCommonSuperClass("syn/Sub", chain(5)));
+    }
+    
+    @Test
+    public void testLayer() {
+        ClassHierarchy root = new ClassHierarchy(SyntheticHierarchy.chain(10), cacheSpec());
+        OverlayResourceLoader loader = new OverlayResourceLoader(new SyntheticHierarchy());
+        loader.putClass(OverlayResourceLoaderTest.classBytes("app/A", chain(7)));
+        ClassHierarchy layer = new ClassHierarchy(root, loader, cacheSpec());
+        assertEquals(chain(5), layer.getCommonSuperClass("app/A", chain(5)));
+        assertEquals(chain(2), root.getCommonSuperClass(chain(2), chain(4)));
+        assertEquals(chain(2), layer.getCommonSuperClass(chain(2), chain(4)));
+        
+        loader.putClass(OverlayResourceLoaderTest.classBytes("app/A", chain(1)));
+        layer.invalidate("app/A");
+        assertEquals(chain(1), layer.getCommonSuperClass("app/A", chain(5)));
+        // The parent stays warm
+        assertEquals(1, root.getLookupCacheStats().getSize());
+        assertTrue(loadedTypes(root).contains(chain(7)));
+    }
+    
+    @Test
+    public void testConcurrentLookup() throws Exception {
+        final OverlayResourceLoader overlay = new OverlayResourceLoader(new SyntheticHierarchy()
+            .addClass("syn/Base", SyntheticHierarchy.OBJECT)
+            .addClass("syn/A", "syn/Base")
+            .addClass("syn/B", "syn/Base")
+        );
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        // The lookup is paused after the previous version of syn/A is loaded
+        final ClassHierarchy hierarchy = new ClassHierarchy(new ResourceLoader() {
+            public boolean hasResource(String name) {
+                return overlay.hasResource(name);
+            }
+            
+            public InputStream getResourceAsStream(String name) throws IOException {
+                if ("syn/B.class".equals(name) && reading.getCount() > 0) {
+                    reading.countDown();
+                    try {
+                        invalidated.await();
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                }
+                return overlay.getResourceAsStream(name);
+            }
+        }, cacheSpec());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> lookup = executor.submit(new Callable<String>() {
+                public String call() {
+                    return hierarchy.getCommonSuperClass("syn/A", "syn/B");
+                }
+            });
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+            overlay.putClass(OverlayResourceLoaderTest.classBytes("syn/A", SyntheticHierarchy.OBJECT));
+            hierarchy.invalidate("syn/A");
+            invalidated.countDown();
+            // Calculated from the previous version, but not cached
+            assertEquals("syn/Base", lookup.get(10, TimeUnit.SECONDS));
+            assertEquals(0, hierarchy.getLookupCacheStats().getSize());
+            assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("syn/A", "syn/B"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    CacheSpec cacheSpec() {
+        return CacheSpec.DEFAULT;
+    }
+    
+    private static String chain(int i) {
+        return "syn/chain/C" + i;
+    }
+    
+    private static Set<String> loadedTypes(ClassHierarchy hierarchy) {
+        Set<String> result = new HashSet<String>();
+        for (ClassHeader header : hierarchy.loadedTypes()) {
+            result.add(header.getClassName());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.tascalate.asmx.ClassReader;
+
+public class JarResourceLoaderTest {
+    
+    File jar;
+    byte[] text;
+    byte[] binary;
+    
+    @Before
+    public void setup() throws IOException {
+        text = "Hello, hello, hello, hello, hello, hello!".getBytes("UTF-8");
+        binary = new byte[100000];
+        new Random(42).nextBytes(binary);
+        
+        jar = File.createTempFile("asmx-test", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), new Manifest());
+        try {
+            out.putNextEntry(new ZipEntry("a/deflated.txt"));
+            out.write(text);
+            out.closeEntry();
+            
+            ZipEntry stored = new ZipEntry("a/b/stored.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(binary.length);
+            CRC32 crc = new CRC32();
+            crc.update(binary);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(binary);
+            out.closeEntry();
+            
+            out.putNextEntry(new ZipEntry("ünïcödé/名前.txt"));
+            out.write(text);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+    
+    @After
+    public void cleanup() {
+        jar.delete();
+    }
+    
+    @Test
+    public void testEntries() throws IOException {
+        JarResourceLoader loader = new JarResourceLoader(jar);
+        assertTrue(loader.hasResource("a/deflated.txt"));
+        assertTrue(loader.hasResource("a/b/stored.bin"));
+        assertTrue(loader.hasResource("ünïcödé/名前.txt"));
+        assertTrue(loader.hasResource("META-INF/MANIFEST.MF"));
+        assertFalse(loader.hasResource("a/missing.txt"));
+        assertFalse(loader.hasResource("a/deflated.tx"));
+        
+        assertArrayEquals(text, ResourceLoaders.getResourceAsBytes(loader, "a/deflated.txt"));
+        assertArrayEquals(binary, ResourceLoaders.getResourceAsBytes(loader, "a/b/stored.bin"));
+        assertArrayEquals(text, ResourceLoaders.getResourceAsBytes(loader, "ünïcödé/名前.txt"));
+        
+        // Stored entries are slices of the mapping
+        ByteBuffer stored = loader.getResourceAsBuffer("a/b/stored.bin");
+        assertTrue(stored.isDirect());
+        assertEquals(binary.length, stored.remaining());
+        
+        InputStream in = loader.getResourceAsStream("a/deflated.txt");
+        try {
+            byte[] bytes = new byte[text.length];
+            assertEquals(text.length, in.read(bytes));
+            assertEquals(-1, in.read());
+            assertArrayEquals(text, bytes);
+        } finally {
+            in.close();
+        }
+        
+        try {
+            loader.getResourceAsBuffer("a/missing.txt");
+            fail("Missing resource is returned");
+        } catch (FileNotFoundException ex) {
+            // Ok
+        }
+    }
+    
+    @Test
+    public void testClassesFromRealJar() throws IOException {
+        File junit = new File(Test.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        JarResourceLoader loader = new JarResourceLoader(junit);
+        for (String type : new String[] {"org/junit/Assert", "org/junit/Test", "junit/framework/TestCase"}) {
+            ClassReader expected = ResourceLoaders.newClassReader(loader, type);
+            ClassHeader actual = ResourceLoaders.readClassHeader(loader, type);
+            assertEquals(expected.getClassName(), actual.getClassName());
+            assertEquals(expected.getSuperName(), actual.getSuperName());
+            assertArrayEquals(expected.getInterfaces(), actual.getInterfaces());
+        }
+    }
+}
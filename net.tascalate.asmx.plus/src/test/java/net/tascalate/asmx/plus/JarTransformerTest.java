@@ -0,0 +1,357 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassVisitor;
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.Label;
+import net.tascalate.asmx.MethodVisitor;
+import net.tascalate.asmx.Opcodes;
+
+public class JarTransformerTest {
+    static final int CLASSES = 200;
+    
+    File input;
+    File output;
+    Map<String, byte[]> entries;
+    
+    @Before
+    public void setup() throws IOException {
+        entries = new LinkedHashMap<String, byte[]>();
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+        entries.put("gen/", new byte[0]);
+        entries.put("gen/Base.class", newClass("gen/Base", "java/lang/Object"));
+        entries.put("gen/A.class", newClass("gen/A", "gen/Base"));
+        entries.put("gen/B.class", newClass("gen/B", "gen/Base"));
+        for (int i = 0; i < CLASSES; i++) {
+            entries.put("gen/User" + i + ".class", newUser("gen/User" + i));
+            if (i % 50 == 0) {
+                entries.put("data/text" + i + ".txt", ("Resource " + i).getBytes("UTF-8"));
+            }
+        }
+        input = File.createTempFile("asmx-input", ".jar");
+        output = File.createTempFile("asmx-output", ".jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(input));
+        try {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(e.getKey()));
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    @After
+    public void cleanup() {
+        input.delete();
+        output.delete();
+    }
+    
+    @Test
+    public void testTransformation() throws Exception {
+        ClassHierarchy hierarchy = newHierarchy();
+        new JarTransformer(hierarchy, new AddField()).transform(input, output);
+        Map<String, byte[]> result = readEntries(output);
+        // Same entries in the same order
+        assertEquals(new ArrayList<String>(entries.keySet()), new ArrayList<String>(result.keySet()));
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            if (!e.getKey().endsWith(".class") || e.getKey().equals("gen/Base.class")) {
+                // Resources and skipped classes are copied
+                assertArrayEquals(e.getKey(), e.getValue(), result.get(e.getKey()));
+            }
+        }
+        
+        // Frames are computed: classes are accepted by the verifier
+        BytesClassLoader classLoader = new BytesClassLoader(result);
+        for (int i = 0; i < CLASSES; i += 17) {
+            Class<?> user = classLoader.loadClass("gen.User" + i);
+            assertNotNull(user.getField("TRANSFORMED"));
+            Method pick = user.getMethod("pick", boolean.class);
+            assertEquals("gen.A", pick.invoke(null, true).getClass().getName());
+            assertEquals("gen.B", pick.invoke(null, false).getClass().getName());
+        }
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+    }
+    
+    @Test
+    public void testDeterministicOutput() throws IOException {
+        ClassHierarchy hierarchy = newHierarchy();
+        ForkJoinPool pool = new ForkJoinPool(7);
+        try {
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            FileInputStream in = new FileInputStream(input);
+            try {
+                new JarTransformer(hierarchy, new AddField()).withExecutor(pool).transform(in, first);
+            } finally {
+                in.close();
+            }
+            in = new FileInputStream(input);
+            try {
+                new JarTransformer(newHierarchy(), new AddField()).transform(in, second);
+            } finally {
+                in.close();
+            }
+            assertArrayEquals(first.toByteArray(), second.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testStoredEntries() throws Exception {
+        entries.put("lib/nested.jar", readAll(input));
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(input));
+        try {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                String name = e.getKey();
+                if (name.startsWith("META-INF/") || name.endsWith(".jar") || name.equals("gen/User7.class")) {
+                    byte[] content = e.getValue();
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    ZipEntry entry = new ZipEntry(name);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                    out.putNextEntry(entry);
+                } else {
+                    out.putNextEntry(new ZipEntry(name));
+                }
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        new JarTransformer(newHierarchy(), new AddField()).transform(input, output);
+        
+        ZipFile zip = new ZipFile(output);
+        try {
+            assertEquals(ZipEntry.STORED, zip.getEntry("META-INF/MANIFEST.MF").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("lib/nested.jar").getMethod());
+            // Transformed, but still stored
+            ZipEntry stored = zip.getEntry("gen/User7.class");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertTrue(stored.getSize() > entries.get("gen/User7.class").length);
+            assertEquals(stored.getSize(), stored.getCompressedSize());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("gen/User8.class").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("data/text0.txt").getMethod());
+        } finally {
+            zip.close();
+        }
+        // Checksums of stored entries are verified while reading
+        Map<String, byte[]> result = readEntries(output);
+        assertArrayEquals(entries.get("META-INF/MANIFEST.MF"), result.get("META-INF/MANIFEST.MF"));
+        assertArrayEquals(entries.get("lib/nested.jar"), result.get("lib/nested.jar"));
+        assertNotNull(new BytesClassLoader(result).loadClass("gen.User7").getField("TRANSFORMED"));
+    }
+    
+    @Test
+    public void testFailure() throws IOException {
+        final IllegalStateException failure = new IllegalStateException("Broken");
+        JarTransformer transformer = new JarTransformer(newHierarchy(), new JarTransformer.Transformation() {
+            public ClassVisitor createVisitor(String className, ClassVisitor writer) {
+                if (className.equals("gen/User42")) {
+                    throw failure;
+                }
+                return writer;
+            }
+        });
+        try {
+            transformer.transform(input, output);
+            fail("Failure is not reported");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("gen/User42.class"));
+            assertEquals(failure, ex.getCause());
+        }
+    }
+    
+    private ClassHierarchy newHierarchy() throws IOException {
+        return new ClassHierarchy(new CompositeResourceLoader(
+            new JarResourceLoader(input), 
+            new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader())
+        ));
+    }
+    
+    private static byte[] readAll(File file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                content.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return content.toByteArray();
+    }
+    
+    private static Map<String, byte[]> readEntries(File file) throws IOException {
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+        try {
+            ZipEntry entry;
+            while (null != (entry = in.getNextEntry())) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    content.write(buffer, 0, count);
+                }
+                result.put(entry.getName(), content.toByteArray());
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+    
+    private static byte[] newClass(String name, String superName) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+    
+    /**
+     * The class with a branch merging <code>gen/A</code> and <code>gen/B</code>,
+     * written without frames.
+     */
+    static byte[] newUser(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label other = new Label();
+        Label done = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, other);
+        mv.visitTypeInsn(Opcodes.NEW, "gen/A");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "gen/A", "<init>", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, done);
+        mv.visitLabel(other);
+        mv.visitTypeInsn(Opcodes.NEW, "gen/B");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "gen/B", "<init>", "()V", false);
+        mv.visitLabel(done);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "gen/Base", "hashCode", "()I", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+    
+    static class AddField implements JarTransformer.Transformation {
+        public ClassVisitor createVisitor(String className, ClassVisitor writer) {
+            if (className.equals("gen/Base")) {
+                return null;
+            }
+            return new ClassVisitor(AsmVersion.CURRENT, writer) {
+                @Override
+                public void visitEnd() {
+                    cv.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, 
+                                  "TRANSFORMED", "Z", null, Boolean.TRUE).visitEnd();
+                    super.visitEnd();
+                }
+            };
+        }
+    }
+    
+    static class BytesClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        
+        BytesClassLoader(Map<String, byte[]> entries) {
+            super(BytesClassLoader.class.getClassLoader());
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                if (e.getKey().endsWith(".class")) {
+                    String name = e.getKey().substring(0, e.getKey().length() - 6).replace('/', '.');
+                    classes.put(name, e.getValue());
+                }
+            }
+        }
+        
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (null == bytes) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JrtResourceLoaderTest {
+    
+    @Before
+    public void checkModularJdk() {
+        Assume.assumeTrue(new File(System.getProperty("java.home"), "lib/modules").isFile());
+    }
+    
+    @Test
+    public void testRunningJdk() throws IOException {
+        JrtResourceLoader loader = new JrtResourceLoader();
+        assertEquals("java.base", loader.moduleOf("java/lang"));
+        assertEquals("java.sql", loader.moduleOf("java/sql"));
+        // java.datatransfer is listed for the parent java/awt package too
+        assertEquals("java.desktop", loader.moduleOf("java/awt"));
+        assertTrue(loader.hasResource("java/awt/Panel.class"));
+        assertNull(loader.moduleOf("net/tascalate/asmx/plus"));
+        assertTrue(loader.hasResource("java/util/ArrayList.class"));
+        assertFalse(loader.hasResource("java/util/NoSuchList.class"));
+        assertFalse(loader.hasResource("net/tascalate/asmx/plus/ClassHierarchy.class"));
+        
+        InputStream in = ClassLoader.getSystemResourceAsStream("java/sql/Timestamp.class");
+        try {
+            // The bytes as they are stored in the image, not as parsed by ClassReader
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                expected.write(buffer, 0, count);
+            }
+            assertArrayEquals(expected.toByteArray(), ResourceLoaders.getResourceAsBytes(loader, "java/sql/Timestamp.class"));
+        } finally {
+            in.close();
+        }
+        
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        assertEquals("java/util/Date", hierarchy.getCommonSuperClass("java/sql/Timestamp", "java/sql/Date"));
+        assertEquals("java/util/AbstractCollection", hierarchy.getCommonSuperClass("java/util/LinkedList", "java/util/HashSet"));
+    }
+    
+    @Test
+    public void testJavaHome() throws IOException {
+        JrtResourceLoader loader = new JrtResourceLoader(new File(System.getProperty("java.home")));
+        try {
+            assertEquals("java.base", loader.moduleOf("java/util"));
+            assertTrue(loader.hasResource("java/util/ArrayList.class"));
+            ClassHierarchy hierarchy = new ClassHierarchy(loader);
+            assertEquals("java/util/Collection", hierarchy.getCommonSuperClass("java/util/List", "java/util/Set"));
+        } finally {
+            loader.close();
+        }
+    }
+}
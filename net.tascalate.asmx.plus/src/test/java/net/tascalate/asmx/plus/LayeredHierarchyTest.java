@@ -0,0 +1,168 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LayeredHierarchyTest {
+    
+    AsyncLookupTest.ReadsLoader jdk;
+    ClassHierarchy root;
+    ClassHierarchy tenant1;
+    ClassHierarchy tenant2;
+    
+    @Before
+    public void setup() {
+        SyntheticHierarchy libraries = new SyntheticHierarchy()
+            .addInterface("lib/Api")
+            .addClass("lib/Base", SyntheticHierarchy.OBJECT)
+            .addClass("lib/Impl1", "lib/Base", "lib/Api")
+            .addClass("lib/Impl2", "lib/Base");
+        jdk = new AsyncLookupTest.ReadsLoader();
+        root = new ClassHierarchy(new CompositeResourceLoader(libraries, jdk));
+        
+        // Another version of the library class
+        tenant1 = new ClassHierarchy(root, new SyntheticHierarchy()
+            .addClass("lib/Impl2", SyntheticHierarchy.OBJECT, "lib/Api")
+            .addClass("app/A", "lib/Impl1")
+            .addClass("app/B", "lib/Impl2")
+        );
+        tenant2 = new ClassHierarchy(root, new SyntheticHierarchy()
+            .addClass("app/A", "lib/Impl1")
+            .addClass("app/B", "lib/Impl2")
+            .addClass("app/C", SyntheticHierarchy.OBJECT, "lib/Api", "java/io/Serializable")
+        );
+    }
+    
+    @Test
+    public void testIsolation() {
+        assertSame(root, tenant1.parent());
+        assertEquals("lib/Api", tenant1.getCommonSuperClass("app/A", "app/B"));
+        assertEquals("lib/Base", tenant2.getCommonSuperClass("app/A", "app/B"));
+        assertEquals("lib/Api", tenant1.getCommonSuperClass("lib/Impl1", "lib/Impl2"));
+        assertEquals("lib/Base", tenant2.getCommonSuperClass("lib/Impl1", "lib/Impl2"));
+        assertEquals("lib/Base", root.getCommonSuperClass("lib/Impl1", "lib/Impl2"));
+        assertTrue(tenant2.isSubClass("[Lapp/B;", "[Llib/Base;"));
+        assertFalse(tenant1.isSubClass("[Lapp/B;", "[Llib/Base;"));
+        
+        // Views of the layer keep the parent
+        assertEquals("lib/Api", tenant1.shareWith(new SyntheticHierarchy()).getCommonSuperClass("lib/Impl2", "lib/Impl1"));
+    }
+    
+    @Test
+    public void testSharedCaches() {
+        assertEquals("java/util/AbstractList", root.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        assertEquals("java/util/AbstractList", tenant1.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        assertEquals("java/util/AbstractList", tenant2.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+        // Lookups cached by the parent are reused
+        assertEquals(0, tenant1.getLookupCacheStats().getSize());
+        assertEquals(0, tenant2.getLookupCacheStats().getSize());
+        // Lookups calculated by layers are cached by layers only
+        assertEquals("lib/Base", tenant2.getCommonSuperClass("lib/Impl1", "lib/Impl2"));
+        assertEquals("lib/Api", tenant1.getCommonSuperClass("lib/Impl1", "lib/Impl2"));
+        assertEquals(1, root.getLookupCacheStats().getSize());
+        assertEquals(1, tenant1.getLookupCacheStats().getSize());
+        assertEquals(1, tenant2.getLookupCacheStats().getSize());
+        
+        // Types of the parent are read once for all layers
+        assertEquals(1, jdk.reads.get("java/util/ArrayList.class").get());
+        assertEquals(1, jdk.reads.get("java/util/AbstractList.class").get());
+    }
+    
+    @Test
+    public void testInterfacesAcrossLayers() {
+        assertEquals("lib/Api", tenant2.getCommonSuperClass("app/C", "app/A"));
+        assertEquals("java/io/Serializable", tenant2.getCommonSuperClass("app/C", "java/lang/String"));
+        assertEquals("java/io/Serializable", tenant2.getCommonSuperClass("java/lang/String", "java/util/ArrayList"));
+        assertTrue(tenant2.isSubClass("app/C", "java/io/Serializable"));
+        assertTrue(tenant2.isSubClass("app/A", "lib/Api"));
+        
+        // Nested layers
+        ClassHierarchy nested = new ClassHierarchy(tenant2, new SyntheticHierarchy()
+            .addClass("app/D", "app/C")
+        );
+        assertEquals("app/C", nested.getCommonSuperClass("app/D", "app/C"));
+        assertEquals("lib/Api", nested.getCommonSuperClass("app/D", "lib/Impl1"));
+        assertTrue(nested.isSubClass("app/D", "java/io/Serializable"));
+    }
+    
+    @Test
+    public void testShadowedTypes() {
+        ClassHierarchy parent = new ClassHierarchy(new SyntheticHierarchy()
+            .addInterface("lib/Api")
+            .addClass("lib/Base", SyntheticHierarchy.OBJECT)
+            .addClass("lib/Sub1", "lib/Base", "lib/Api")
+            .addClass("lib/Sub2", "lib/Base", "lib/Api")
+        );
+        // Both a class and an interface of the parent are shadowed
+        ClassHierarchy layer = new ClassHierarchy(parent, new SyntheticHierarchy()
+            .addInterface("lib/Api")
+            .addClass("lib/Base", SyntheticHierarchy.OBJECT)
+            .addClass("app/A", "lib/Base", "lib/Api")
+        );
+        assertTrue(parent.isSubClass("lib/Sub1", "lib/Base"));
+        assertTrue(parent.isSubClass("lib/Sub1", "lib/Api"));
+        // Inherited types extend versions of the parent
+        assertFalse(layer.isSubClass("lib/Sub1", "lib/Base"));
+        assertFalse(layer.isSubClass("lib/Sub1", "lib/Api"));
+        assertTrue(layer.isSubClass("app/A", "lib/Base"));
+        assertTrue(layer.isSubClass("app/A", "lib/Api"));
+        assertEquals("java/lang/Object", layer.getCommonSuperClass("lib/Sub1", "app/A"));
+        
+        // The parent is not affected by lookups of the layer
+        assertEquals("lib/Base", layer.getCommonSuperClass("lib/Sub1", "lib/Sub2"));
+        assertEquals(0, parent.getLookupCacheStats().getSize());
+        assertEquals(2, layer.getLookupCacheStats().getSize());
+        assertEquals("lib/Base", parent.getCommonSuperClass("lib/Sub2", "lib/Sub1"));
+        assertEquals(1, parent.getLookupCacheStats().getSize());
+    }
+    
+    @Test
+    public void testSnapshotOfLayer() throws IOException {
+        assertEquals("lib/Api", tenant1.getCommonSuperClass("app/A", "app/B"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HierarchySnapshot.write(tenant1, out);
+        HierarchySnapshot snapshot = HierarchySnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+        // Types of the layer only
+        assertEquals(3, snapshot.size());
+    }
+}
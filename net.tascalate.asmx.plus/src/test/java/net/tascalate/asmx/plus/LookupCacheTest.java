@@ -0,0 +1,320 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class LookupCacheTest {
+    
+    @Test
+    public void testUnbounded() {
+        NamedCache cache = new NamedCache(CacheSpec.unbounded().withConcurrencyLevel(4));
+        for (int i = 0; i < 10000; i++) {
+            assertNull(cache.get("a" + i, "b" + i));
+            assertEquals("c" + i, cache.putIfAbsent("a" + i, "b" + i, "c" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            // Pairs are unordered
+            assertEquals("c" + i, cache.get("b" + i, "a" + i));
+        }
+        assertEquals("c0", cache.putIfAbsent("a0", "b0", "other"));
+        CacheStats stats = cache.stats();
+        assertEquals(10000, stats.getHitCount());
+        assertEquals(10000, stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(10000, stats.getSize());
+    }
+    
+    @Test
+    public void testBoundedSize() {
+        NamedCache cache = new NamedCache(CacheSpec.bounded(1000));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 20000; i++) {
+                if (null == cache.get("a" + i, "b" + i)) {
+                    cache.putIfAbsent("a" + i, "b" + i, "c" + i);
+                }
+            }
+        }
+        CacheStats stats = cache.stats();
+        assertTrue(stats.getSize() <= 1000);
+        assertTrue(stats.getSize() > 900);
+        assertTrue(stats.getEvictionCount() > 0);
+        // Whatever survived the evictions is still correct
+        int found = 0;
+        for (int i = 0; i < 20000; i++) {
+            String result = cache.get("a" + i, "b" + i);
+            if (null != result) {
+                assertEquals("c" + i, result);
+                found++;
+            }
+        }
+        assertEquals(stats.getSize(), found);
+    }
+    
+    @Test
+    public void testFrequentPairsSurviveScan() {
+        NamedCache cache = new NamedCache(CacheSpec.bounded(256).withConcurrencyLevel(1));
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                if (null == cache.get("hot" + i, "x")) {
+                    cache.putIfAbsent("hot" + i, "x", "y" + i);
+                }
+            }
+        }
+        // Scan of many cold pairs, hot pairs are still in use but less
+        // recently than the cache size, so LRU would evict them all
+        for (int i = 0; i < 100000; i++) {
+            if (null == cache.get("cold" + i, "x")) {
+                cache.putIfAbsent("cold" + i, "x", "z");
+            }
+            if (i % 10 == 0) {
+                int hot = (i / 10) % 100;
+                if (null == cache.get("hot" + hot, "x")) {
+                    cache.putIfAbsent("hot" + hot, "x", "y" + hot);
+                }
+            }
+        }
+        int retained = 0;
+        for (int i = 0; i < 100; i++) {
+            if (null != cache.get("hot" + i, "x")) {
+                retained++;
+            }
+        }
+        assertTrue("Only " + retained + " hot pairs retained", retained >= 70);
+    }
+    
+    @Test
+    public void testRemoveAll() {
+        testRemoveAll(CacheSpec.unbounded().withConcurrencyLevel(4));
+        testRemoveAll(CacheSpec.unbounded().withConcurrencyLevel(4).withInvalidationIndex(true));
+    }
+    
+    private static void testRemoveAll(CacheSpec spec) {
+        NamedCache cache = new NamedCache(spec);
+        for (int i = 0; i < 5000; i++) {
+            cache.putIfAbsent("a" + i, "b" + (i % 10), "c" + i);
+        }
+        cache.putIfAbsent("b3", "b3", "b3");
+        cache.removeAll("b3", "a7");
+        // 500 pairs with b3, one with a7, and the pair of b3 with itself
+        assertEquals(5000 - 500 - 1, cache.stats().getSize());
+        for (int i = 0; i < 5000; i++) {
+            String result = cache.get("a" + i, "b" + (i % 10));
+            if (i % 10 == 3 || i == 7) {
+                assertNull(result);
+            } else {
+                assertEquals("c" + i, result);
+            }
+        }
+        assertNull(cache.get("b3", "b3"));
+        // Removed pairs may be cached again
+        assertEquals("c13", cache.putIfAbsent("a13", "b3", "c13"));
+        assertEquals("c13", cache.get("b3", "a13"));
+        cache.removeAll("unknown");
+        assertEquals(5000 - 500, cache.stats().getSize());
+    }
+    
+    @Test
+    public void testRemoveAllAfterEvictions() {
+        testRemoveAllAfterEvictions(CacheSpec.bounded(500));
+        testRemoveAllAfterEvictions(CacheSpec.bounded(500).withInvalidationIndex(true));
+    }
+    
+    private static void testRemoveAllAfterEvictions(CacheSpec spec) {
+        NamedCache cache = new NamedCache(spec);
+        for (int i = 0; i < 20000; i++) {
+            if (null == cache.get("a" + i, "b" + (i % 7))) {
+                cache.putIfAbsent("a" + i, "b" + (i % 7), "c" + i);
+            }
+        }
+        cache.removeAll("b0", "b1");
+        int found = 0;
+        for (int i = 0; i < 20000; i++) {
+            String result = cache.get("a" + i, "b" + (i % 7));
+            if (null != result) {
+                assertTrue(i % 7 > 1);
+                assertEquals("c" + i, result);
+                found++;
+            }
+        }
+        assertEquals(cache.stats().getSize(), found);
+    }
+    
+    @Test
+    public void testRetainAll() {
+        NamedCache cache = new NamedCache(CacheSpec.unbounded().withConcurrencyLevel(4).withInvalidationIndex(true));
+        for (int i = 0; i < 1000; i++) {
+            cache.putIfAbsent("a" + (i % 10), "b" + i, "c" + i);
+        }
+        List<String> retained = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            if (i != 11) {
+                retained.add("b" + i);
+            }
+        }
+        retained.add("a1");
+        retained.add("a2");
+        cache.retainAll(retained);
+        // Pairs of a1 and a2, except the one with b11
+        assertEquals(199, cache.stats().getSize());
+        for (int i = 0; i < 1000; i++) {
+            String result = cache.get("a" + (i % 10), "b" + i);
+            if ((i % 10 == 1 || i % 10 == 2) && i != 11) {
+                assertEquals("c" + i, result);
+            } else {
+                assertNull(result);
+            }
+        }
+        // Index is updated as well
+        cache.removeAll("a1");
+        assertEquals(100, cache.stats().getSize());
+    }
+    
+    @Test
+    public void testZeroSize() {
+        NamedCache cache = new NamedCache(CacheSpec.bounded(0));
+        assertEquals("c", cache.putIfAbsent("a", "b", "c"));
+        assertNull(cache.get("a", "b"));
+        assertEquals(0, cache.stats().getSize());
+    }
+    
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final NamedCache cache = new NamedCache(CacheSpec.bounded(2000).withConcurrencyLevel(4));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int n = 0; n < 100000; n++) {
+                            int i = (n * 31 + seed * 17) % 5000;
+                            String result = cache.get("a" + i, "b" + i);
+                            if (null == result) {
+                                result = cache.putIfAbsent("b" + i, "a" + i, "c" + i);
+                            }
+                            assertEquals("c" + i, result);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.stats().getSize() <= 2000);
+    }
+    
+    @Test
+    public void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable();
+        int id = symbols.idOf("java/lang/String");
+        assertTrue(id != SymbolTable.NONE);
+        assertEquals(id, symbols.idOf(new String("java/lang/String")));
+        for (int i = 0; i < 1000; i++) {
+            // Dense and sequential
+            assertEquals(id + i + 1, symbols.idOf("type" + i));
+        }
+        assertEquals("type999", symbols.nameOf(id + 1000));
+        assertEquals(LookupCache.key(1, 2), LookupCache.key(2, 1));
+        assertTrue(LookupCache.key(1, 2) != LookupCache.key(1, 3));
+    }
+    
+    @Test
+    public void testClassHierarchyStats() {
+        ClassHierarchy hierarchy = new ClassHierarchy(
+            new InheritanceLookupTest.ClasspathResourceLoader(ClassLoader.getSystemClassLoader()),
+            CacheSpec.bounded(100)
+        );
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/LinkedList", "java/util/ArrayList"));
+        CacheStats stats = hierarchy.getLookupCacheStats();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getSize());
+    }
+    
+    static class NamedCache {
+        final SymbolTable symbols = new SymbolTable();
+        final LookupCache cache;
+        
+        NamedCache(CacheSpec spec) {
+            cache = new LookupCache(spec);
+        }
+        
+        String get(String type1, String type2) {
+            int result = cache.get(symbols.idOf(type1), symbols.idOf(type2));
+            return SymbolTable.NONE == result ? null : symbols.nameOf(result);
+        }
+        
+        String putIfAbsent(String type1, String type2, String result) {
+            return symbols.nameOf(cache.putIfAbsent(symbols.idOf(type1), symbols.idOf(type2), symbols.idOf(result), cache.epoch(), null));
+        }
+        
+        void removeAll(String... types) {
+            BitSet ids = new BitSet();
+            for (String type : types) {
+                ids.set(symbols.idOf(type));
+            }
+            cache.removeAll(ids);
+        }
+        
+        void retainAll(Collection<String> types) {
+            BitSet ids = new BitSet();
+            for (String type : types) {
+                ids.set(symbols.idOf(type));
+            }
+            cache.retainAll(ids);
+        }
+        
+        CacheStats stats() {
+            return cache.stats();
+        }
+    }
+}
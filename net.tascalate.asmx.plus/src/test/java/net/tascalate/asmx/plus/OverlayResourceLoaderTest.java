@@ -0,0 +1,180 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OverlayResourceLoaderTest {
+    
+    SyntheticHierarchy base;
+    OverlayResourceLoader overlay;
+    
+    @Before
+    public void setup() {
+        base = new SyntheticHierarchy()
+            .addClass("gen/Base", SyntheticHierarchy.OBJECT)
+            .addClass("gen/Other", SyntheticHierarchy.OBJECT)
+            .addClass("gen/A", "gen/Base")
+            .addClass("gen/B", "gen/Base")
+            .addClass("gen/C", "gen/Base");
+        overlay = new OverlayResourceLoader(base);
+    }
+    
+    @Test
+    public void testResources() throws IOException {
+        byte[] text = "Generated".getBytes("UTF-8");
+        assertFalse(overlay.hasResource("gen/text.txt"));
+        overlay.putResource("gen/text.txt", text);
+        assertTrue(overlay.hasResource("gen/text.txt"));
+        assertArrayEquals(text, ResourceLoaders.getResourceAsBytes(overlay, "gen/text.txt"));
+        assertNotEquals(StampedResourceLoader.NO_STAMP, overlay.getResourceStamp("gen/text.txt"));
+        assertTrue(overlay.removeResource("gen/text.txt"));
+        assertFalse(overlay.removeResource("gen/text.txt"));
+        assertFalse(overlay.hasResource("gen/text.txt"));
+        
+        // Overlay takes priority
+        byte[] replacement = classBytes("gen/A", "gen/Other");
+        assertEquals("gen/A", overlay.putClass(replacement));
+        assertArrayEquals(replacement, ResourceLoaders.getResourceAsBytes(overlay, "gen/A.class"));
+        assertEquals("gen/Other", ResourceLoaders.readClassHeader(overlay, "gen/A").getSuperName());
+        // The content can't be changed via buffers
+        assertTrue(overlay.getResourceAsBuffer("gen/A.class").isReadOnly());
+    }
+    
+    @Test
+    public void testGeneratedClasses() {
+        ClassHierarchy hierarchy = overlay.bind(new ClassHierarchy(overlay));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/C"));
+        // Classes that were never resolved don't affect the caches
+        for (int i = 0; i < 100; i++) {
+            overlay.putClass(classBytes("gen/Generated" + i, i == 0 ? "gen/A" : "gen/Generated" + (i - 1)));
+        }
+        assertEquals(2, hierarchy.getLookupCacheStats().getSize());
+        assertEquals("gen/A", hierarchy.getCommonSuperClass("gen/Generated99", "gen/A"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/Generated50", "gen/C"));
+        assertEquals(4, hierarchy.getLookupCacheStats().getSize());
+        // Only lookups of the class and its sub-types are dropped
+        overlay.putClass(classBytes("gen/Generated50", "gen/B"));
+        assertEquals(2, hierarchy.getLookupCacheStats().getSize());
+        assertEquals("gen/B", hierarchy.getCommonSuperClass("gen/Generated99", "gen/B"));
+    }
+    
+    @Test
+    public void testReplacedClass() {
+        ClassHierarchy hierarchy = overlay.bind(new ClassHierarchy(overlay));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/C"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("[Lgen/A;", "[Lgen/B;"));
+        assertTrue(hierarchy.isSubClass("[Lgen/B;", "[Lgen/Base;"));
+        assertEquals(3, hierarchy.getLookupCacheStats().getSize());
+        
+        overlay.putClass(classBytes("gen/B", "gen/Other"));
+        // Lookups of unrelated types are kept
+        assertEquals(1, hierarchy.getLookupCacheStats().getSize());
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/C"));
+        assertTrue(hierarchy.isSubClass("gen/B", "gen/Other"));
+        assertFalse(hierarchy.isSubClass("[Lgen/B;", "[Lgen/Base;"));
+        assertTrue(hierarchy.isSubClass("[Lgen/B;", "[Lgen/Other;"));
+        
+        // Sub-types of the changed class are reloaded
+        overlay.putClasses(Arrays.asList(classBytes("gen/D", "gen/B"), classBytes("gen/E", "gen/D")));
+        assertEquals("gen/Other", hierarchy.getCommonSuperClass("gen/E", "gen/Other"));
+        overlay.putClass(classBytes("gen/B", "gen/Base"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/E", "gen/A"));
+        assertFalse(hierarchy.isSubClass("gen/E", "gen/Other"));
+        
+        // The version of the underlying loader is visible again
+        overlay.removeResource("gen/B.class");
+        overlay.removeResource("gen/D.class");
+        try {
+            hierarchy.getCommonSuperClass("gen/D", "gen/A");
+            fail("Removed class is resolved");
+        } catch (UnresolvedTypeException ex) {
+            assertEquals("gen/D", ex.getTypeName());
+        }
+    }
+    
+    @Test
+    public void testMissingClass() {
+        ClassHierarchy hierarchy = overlay.bind(new ClassHierarchy(overlay));
+        try {
+            hierarchy.getCommonSuperClass("gen/Generated", "gen/A");
+            fail("Missing class is resolved");
+        } catch (UnresolvedTypeException ex) {
+            assertEquals("gen/Generated", ex.getTypeName());
+        }
+        // Not cached as missing anymore
+        overlay.putClass(classBytes("gen/Generated", "gen/Base"));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/Generated", "gen/A"));
+        // Views share caches
+        assertEquals("gen/Base", hierarchy.shareWith(base).getCommonSuperClass("gen/A", "gen/Generated"));
+    }
+    
+    @Test
+    public void testSnapshot() throws IOException {
+        ClassHierarchy original = new ClassHierarchy(base);
+        assertEquals("gen/Base", original.getCommonSuperClass("gen/A", "gen/B"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Not stamped, trusted as is
+        HierarchySnapshot.write(original, out);
+        HierarchySnapshot snapshot = HierarchySnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+        
+        ClassHierarchy hierarchy = overlay.bind(new ClassHierarchy(overlay, snapshot));
+        assertEquals("gen/Base", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+        overlay.putClass(classBytes("gen/A", "gen/Other"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("gen/A", "gen/B"));
+        assertEquals("gen/Other", hierarchy.getCommonSuperClass("gen/Other", "gen/A"));
+    }
+    
+    static byte[] classBytes(String name, String superName, String... interfaces) {
+        try {
+            return ResourceLoaders.getResourceAsBytes(new SyntheticHierarchy().addClass(name, superName, interfaces), name + ".class");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreloadTest {
+    
+    ExecutorService executor;
+    CountingLoader loader;
+    
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        loader = new CountingLoader();
+    }
+    
+    @After
+    public void cleanup() {
+        executor.shutdown();
+    }
+    
+    @Test
+    public void testPreload() {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        hierarchy.preload(Arrays.asList(InheritanceLookupTest.TYPES), executor);
+        assertTrue(loader.reads.get() > 0);
+        
+        loader.reads.set(0);
+        ClassHierarchy reference = new ClassHierarchy(new CountingLoader());
+        for (String type1 : InheritanceLookupTest.TYPES) {
+            for (String type2 : InheritanceLookupTest.TYPES) {
+                assertEquals(reference.getCommonSuperClass(type1, type2), hierarchy.getCommonSuperClass(type1, type2));
+                assertEquals(reference.isSubClass(type1, type2), hierarchy.isSubClass(type1, type2));
+            }
+        }
+        // Everything was loaded up front
+        assertEquals(0, loader.reads.get());
+    }
+    
+    @Test
+    public void testCommonSuperClasses() {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        List<Map.Entry<String, String>> pairs = new ArrayList<Map.Entry<String, String>>();
+        pairs.add(new AbstractMap.SimpleImmutableEntry<String, String>("java/util/LinkedList", "java/util/HashSet"));
+        pairs.add(new AbstractMap.SimpleImmutableEntry<String, String>("java/util/List", "java/util/Set"));
+        pairs.add(new AbstractMap.SimpleImmutableEntry<String, String>("java/lang/Integer", "java/lang/Long"));
+        pairs.add(new AbstractMap.SimpleImmutableEntry<String, String>("[Ljava/util/ArrayList;", "[Ljava/util/List;"));
+        pairs.add(new AbstractMap.SimpleImmutableEntry<String, String>("[I", "java/lang/String"));
+        assertEquals(
+            Arrays.asList("java/util/AbstractCollection", "java/util/Collection", "java/lang/Number", 
+                          "[Ljava/util/List;", "java/lang/Object"),
+            hierarchy.getCommonSuperClasses(pairs, executor)
+        );
+    }
+    
+    @Test
+    public void testMissingType() {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        try {
+            hierarchy.preload(Arrays.asList("java/util/ArrayList", "no/such/Type"), executor);
+            fail("Missing type is preloaded");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().contains("no/such/Type"));
+        }
+        // Loaded types are kept
+        loader.reads.set(0);
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/AbstractList"));
+        assertEquals(0, loader.reads.get());
+    }
+    
+    static class CountingLoader extends InheritanceLookupTest.ClasspathResourceLoader {
+        final AtomicInteger reads = new AtomicInteger();
+        
+        CountingLoader() {
+            super(ClassLoader.getSystemClassLoader());
+        }
+        
+        @Override
+        public InputStream getResourceAsStream(String name) throws IOException {
+            reads.incrementAndGet();
+            return super.getResourceAsStream(name);
+        }
+    }
+}
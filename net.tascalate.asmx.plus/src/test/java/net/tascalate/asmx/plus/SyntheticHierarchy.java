@@ -0,0 +1,236 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.tascalate.asmx.ClassWriter;
+import net.tascalate.asmx.Opcodes;
+
+/**
+ * Generator of synthetic hierarchies served as in-memory class files, 
+ * plus the naive reference implementation of common super-class lookups 
+ * over the generated model. 
+ */
+class SyntheticHierarchy implements ByteBufferResourceLoader {
+    static final String OBJECT = "java/lang/Object";
+    
+    private final Map<String, ClassHeader> headers = new LinkedHashMap<String, ClassHeader>();
+    private final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+    
+    SyntheticHierarchy addClass(String name, String superName, String... interfaces) {
+        return add(new ClassHeader(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, superName, interfaces));
+    }
+    
+    SyntheticHierarchy addInterface(String name, String... interfaces) {
+        return add(new ClassHeader(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, name, OBJECT, interfaces));
+    }
+    
+    private SyntheticHierarchy add(ClassHeader header) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, header.getAccess(), header.getClassName(), null, header.getSuperName(), header.getInterfaces());
+        cw.visitEnd();
+        headers.put(header.getClassName(), header);
+        classes.put(header.getClassName() + ".class", cw.toByteArray());
+        return this;
+    }
+    
+    /**
+     * The chain of classes <code>C0 .. C(depth-1)</code> where every class 
+     * extends the previous one and implements the interface of the same level; 
+     * interfaces <code>I0 .. I(depth-1)</code> form the chain as well.
+     */
+    static SyntheticHierarchy chain(int depth) {
+        SyntheticHierarchy result = new SyntheticHierarchy();
+        for (int i = 0; i < depth; i++) {
+            result.addInterface("syn/chain/I" + i, i == 0 ? new String[0] : new String[] {"syn/chain/I" + (i - 1)});
+            result.addClass("syn/chain/C" + i, i == 0 ? OBJECT : "syn/chain/C" + (i - 1), "syn/chain/I" + i);
+        }
+        return result;
+    }
+    
+    /**
+     * Interfaces in <code>levels</code> levels of <code>width</code> interfaces,
+     * every interface extends all interfaces of the previous level, so every
+     * pair of levels is a complete set of diamonds. Classes <code>Leaf0 .. Leaf(width-1)</code> 
+     * implement a single interface of the last level each, 
+     * <code>Pair0 .. Pair(width-1)</code> implement two neighbours.
+     */
+    static SyntheticHierarchy lattice(int levels, int width) {
+        SyntheticHierarchy result = new SyntheticHierarchy();
+        String[] previous = new String[0];
+        for (int level = 0; level < levels; level++) {
+            String[] current = new String[width];
+            for (int k = 0; k < width; k++) {
+                current[k] = "syn/lattice/L" + level + "_" + k;
+                result.addInterface(current[k], previous);
+            }
+            previous = current;
+        }
+        for (int k = 0; k < width; k++) {
+            result.addClass("syn/lattice/Leaf" + k, OBJECT, previous[k]);
+            result.addClass("syn/lattice/Pair" + k, OBJECT, previous[k], previous[(k + 1) % width]);
+        }
+        return result;
+    }
+    
+    /**
+     * <code>count</code> classes extending the same base class, every class
+     * implements one of <code>markers</code> interfaces, all markers extend 
+     * the root marker.
+     */
+    static SyntheticHierarchy siblings(int count, int markers) {
+        SyntheticHierarchy result = new SyntheticHierarchy();
+        result.addInterface("syn/siblings/Marker");
+        for (int k = 0; k < markers; k++) {
+            result.addInterface("syn/siblings/Marker" + k, "syn/siblings/Marker");
+        }
+        result.addClass("syn/siblings/Base", OBJECT);
+        for (int i = 0; i < count; i++) {
+            result.addClass("syn/siblings/S" + i, "syn/siblings/Base", "syn/siblings/Marker" + (i % markers));
+        }
+        return result;
+    }
+    
+    List<String> typeNames() {
+        return new ArrayList<String>(headers.keySet());
+    }
+    
+    List<String> classNames() {
+        List<String> result = new ArrayList<String>();
+        for (ClassHeader header : headers.values()) {
+            if (!header.isInterface()) {
+                result.add(header.getClassName());
+            }
+        }
+        return result;
+    }
+    
+    int size() {
+        return headers.size();
+    }
+    
+    public boolean hasResource(String name) {
+        return classes.containsKey(name);
+    }
+    
+    public InputStream getResourceAsStream(String name) throws IOException {
+        return new ByteArrayInputStream(resource(name));
+    }
+    
+    public ByteBuffer getResourceAsBuffer(String name) throws IOException {
+        return ByteBuffer.wrap(resource(name));
+    }
+    
+    private byte[] resource(String name) throws IOException {
+        byte[] result = classes.get(name);
+        if (null == result) {
+            throw new FileNotFoundException("Unable to find resource " + name);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns all acceptable results of the common super-class lookup: 
+     * the type itself when one type is a sub-type of the other one, 
+     * the nearest common super-class other than <code>java/lang/Object</code>,
+     * otherwise any common interface that has no common sub-interfaces,
+     * otherwise <code>java/lang/Object</code>. Plain search over the model,
+     * nothing is cached.
+     */
+    Set<String> referenceCommonSuperClasses(String type1, String type2) {
+        if (isSubtype(type1, type2)) {
+            return Collections.singleton(type2);
+        }
+        if (isSubtype(type2, type1)) {
+            return Collections.singleton(type1);
+        }
+        ClassHeader header1 = headers.get(type1);
+        if (!header1.isInterface()) {
+            for (String c = header1.getSuperName(); !OBJECT.equals(c); c = headers.get(c).getSuperName()) {
+                if (isSubtype(type2, c)) {
+                    return Collections.singleton(c);
+                }
+            }
+        }
+        Set<String> common = new HashSet<String>();
+        for (String s : supertypes(type1)) {
+            if (headers.containsKey(s) && headers.get(s).isInterface() && isSubtype(type2, s)) {
+                common.add(s);
+            }
+        }
+        // Minimal ones are not super-types of other common interfaces
+        Set<String> result = new HashSet<String>(common);
+        for (String candidate : common) {
+            if (result.contains(candidate)) {
+                Set<String> supertypes = supertypes(candidate);
+                supertypes.remove(candidate);
+                result.removeAll(supertypes);
+            }
+        }
+        return result.isEmpty() ? Collections.singleton(OBJECT) : result;
+    }
+    
+    boolean isSubtype(String type, String base) {
+        return OBJECT.equals(base) || supertypes(type).contains(base);
+    }
+    
+    private Set<String> supertypes(String type) {
+        Set<String> visited = new HashSet<String>();
+        List<String> pending = new ArrayList<String>();
+        pending.add(type);
+        while (!pending.isEmpty()) {
+            String next = pending.remove(pending.size() - 1);
+            ClassHeader header = headers.get(next);
+            if (null == header || !visited.add(next)) {
+                continue;
+            }
+            if (null != header.getSuperName()) {
+                pending.add(header.getSuperName());
+            }
+            Collections.addAll(pending, header.getInterfaces());
+        }
+        return visited;
+    }
+}
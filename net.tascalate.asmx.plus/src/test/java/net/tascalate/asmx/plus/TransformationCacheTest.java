@@ -0,0 +1,232 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.tascalate.asmx.ClassReader;
+import net.tascalate.asmx.ClassVisitor;
+import net.tascalate.asmx.ClassWriter;
+
+public class TransformationCacheTest {
+    
+    File directory;
+    byte[] user;
+    
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("asmx-cache", "");
+        directory.delete();
+        user = JarTransformerTest.newUser("gen/User");
+    }
+    
+    @After
+    public void cleanup() {
+        delete(directory);
+    }
+    
+    @Test
+    public void testDependencies() throws IOException {
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        byte[] original = transform(cache, new ClassHierarchy(hierarchy()));
+        assertEquals(1, cache.getMissCount());
+        
+        // New hierarchy, same facts
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(hierarchy())));
+        assertEquals(1, cache.getHitCount());
+        
+        // Unrelated types are changed
+        SyntheticHierarchy unrelated = hierarchy().addClass("gen/C", "gen/Base").addInterface("gen/I");
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(unrelated)));
+        assertEquals(2, cache.getHitCount());
+        
+        // Ancestors are changed: gen/A and gen/B have no common super-class anymore
+        SyntheticHierarchy changed = new SyntheticHierarchy()
+            .addClass("gen/Base", SyntheticHierarchy.OBJECT)
+            .addClass("gen/Other", SyntheticHierarchy.OBJECT)
+            .addClass("gen/A", "gen/Base")
+            .addClass("gen/B", "gen/Other");
+        byte[] updated = transform(cache, new ClassHierarchy(changed));
+        assertEquals(2, cache.getMissCount());
+        assertFalse(Arrays.equals(original, updated));
+        
+        // Both variants are valid now, depending on the hierarchy
+        assertArrayEquals(updated, transform(cache, new ClassHierarchy(changed)));
+        assertEquals(3, cache.getHitCount());
+    }
+    
+    @Test
+    public void testVersion() throws IOException {
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        transform(cache, new ClassHierarchy(hierarchy()));
+        transform(cache, new ClassHierarchy(hierarchy()));
+        assertEquals(1, cache.getHitCount());
+        
+        TransformationCache next = new TransformationCache(directory, "1.1");
+        transform(next, new ClassHierarchy(hierarchy()));
+        assertEquals(0, next.getHitCount());
+        assertEquals(1, next.getMissCount());
+    }
+    
+    @Test
+    public void testFlagsAndTransformation() throws IOException {
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        transform(cache, new ClassHierarchy(hierarchy()));
+        cache.transform(new ClassHierarchy(hierarchy()), user, new JarTransformerTest.AddField(), 
+                        0, ClassWriter.COMPUTE_FRAMES);
+        cache.transform(new ClassHierarchy(hierarchy()), user, new JarTransformerTest.AddField(), 
+                        ClassReader.SKIP_FRAMES, ClassWriter.COMPUTE_MAXS);
+        cache.transform(new ClassHierarchy(hierarchy()), user, new JarTransformerTest.AddField() {}, 
+                        ClassReader.SKIP_FRAMES, ClassWriter.COMPUTE_FRAMES);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    public void testMalformedEntry() throws IOException {
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        byte[] original = transform(cache, new ClassHierarchy(hierarchy()));
+        File entry = entries(directory)[0];
+        byte[] content = Files.readAllBytes(entry.toPath());
+        
+        // Huge count of dependencies
+        byte[] corrupted = content.clone();
+        corrupted[6] = (byte)0x7F;
+        Files.write(entry.toPath(), corrupted);
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(hierarchy())));
+        assertEquals(2, cache.getMissCount());
+        
+        // Overwritten with a valid entry
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(hierarchy())));
+        assertEquals(1, cache.getHitCount());
+        
+        // Truncated
+        Files.write(entry.toPath(), Arrays.copyOf(content, content.length - 1));
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(hierarchy())));
+        assertEquals(3, cache.getMissCount());
+        
+        // Trailing garbage
+        Files.write(entry.toPath(), Arrays.copyOf(content, content.length + 16));
+        assertArrayEquals(original, transform(cache, new ClassHierarchy(hierarchy())));
+        assertEquals(4, cache.getMissCount());
+        assertArrayEquals(content, Files.readAllBytes(entry.toPath()));
+    }
+    
+    @Test
+    public void testUnchangedClass() throws IOException {
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        JarTransformer.Transformation copy = new JarTransformer.Transformation() {
+            public ClassVisitor createVisitor(String className, ClassVisitor writer) {
+                return null;
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            assertSame(user, cache.transform(new ClassHierarchy(hierarchy()), user, copy, 
+                                             ClassReader.SKIP_FRAMES, ClassWriter.COMPUTE_FRAMES));
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+    
+    @Test
+    public void testJarTransformer() throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(jar);
+        try {
+            for (int i = 0; i < 20; i++) {
+                out.putNextEntry(new ZipEntry("gen/User" + i + ".class"));
+                out.write(JarTransformerTest.newUser("gen/User" + i));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        
+        TransformationCache cache = new TransformationCache(directory, "1.0");
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        new JarTransformer(new ClassHierarchy(hierarchy()), new JarTransformerTest.AddField())
+            .withCache(cache)
+            .transform(new ByteArrayInputStream(jar.toByteArray()), first);
+        assertEquals(20, cache.getMissCount());
+        new JarTransformer(new ClassHierarchy(hierarchy()), new JarTransformerTest.AddField())
+            .withCache(cache)
+            .transform(new ByteArrayInputStream(jar.toByteArray()), second);
+        assertEquals(20, cache.getHitCount());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+    
+    private byte[] transform(TransformationCache cache, ClassHierarchy hierarchy) throws IOException {
+        return cache.transform(hierarchy, user, new JarTransformerTest.AddField(), 
+                               ClassReader.SKIP_FRAMES, ClassWriter.COMPUTE_FRAMES);
+    }
+    
+    private static SyntheticHierarchy hierarchy() {
+        return new SyntheticHierarchy()
+            .addClass("gen/Base", SyntheticHierarchy.OBJECT)
+            .addClass("gen/A", "gen/Base")
+            .addClass("gen/B", "gen/Base");
+    }
+    
+    private static File[] entries(File directory) {
+        File[] children = directory.listFiles();
+        assertEquals(1, children.length);
+        File[] entries = children[0].listFiles();
+        assertEquals(1, entries.length);
+        return entries;
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
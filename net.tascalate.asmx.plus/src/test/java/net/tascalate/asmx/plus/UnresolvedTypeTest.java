@@ -0,0 +1,129 @@
+/**
+ * BSD 3-Clause License
+ * 
+ * Copyright (c) 2019-2022, Valery Silaev (http://vsilaev.com)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.tascalate.asmx.plus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnresolvedTypeTest {
+    
+    AsyncLookupTest.ReadsLoader loader;
+    
+    @Before
+    public void setup() {
+        loader = new AsyncLookupTest.ReadsLoader();
+    }
+    
+    @Test
+    public void testFailFast() {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader);
+        UnresolvedTypeException first = lookupMissing(hierarchy);
+        assertEquals("no/such/Type", first.getTypeName());
+        assertTrue(first.getCause() instanceof IOException);
+        
+        int reads = loader.total.get();
+        // Recorded in the negative cache: no I/O, the same exception
+        assertSame(first, lookupMissing(hierarchy));
+        assertSame(first, lookupMissing(hierarchy.shareWith(new AsyncLookupTest.ReadsLoader())));
+        try {
+            hierarchy.isSubClass("no/such/Type", "java/util/List");
+            fail("Missing type is resolved");
+        } catch (UnresolvedTypeException ex) {
+            assertSame(first, ex);
+        }
+        assertEquals(reads, loader.total.get());
+    }
+    
+    @Test
+    public void testAssumeObject() {
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, null, CacheSpec.DEFAULT, UnresolvedTypePolicy.ASSUME_OBJECT);
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("no/such/Type", "java/util/ArrayList"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("[Lno/such/Type;", "[Ljava/util/ArrayList;"));
+        assertTrue(hierarchy.isSubClass("no/such/Type", "java/lang/Object"));
+        assertFalse(hierarchy.isSubClass("no/such/Type", "java/io/Serializable"));
+        // Substitutes are not real types
+        for (ClassHeader header : hierarchy.loadedTypes()) {
+            assertFalse(header.getClassName().startsWith("no/such/"));
+        }
+    }
+    
+    @Test
+    public void testCallbackIsAskedOnce() {
+        final AtomicInteger calls = new AtomicInteger();
+        ClassHierarchy hierarchy = new ClassHierarchy(loader, null, CacheSpec.DEFAULT, new UnresolvedTypePolicy() {
+            public ClassHeader resolve(String type, IOException cause) throws IOException {
+                calls.incrementAndGet();
+                if (type.equals("no/such/Type")) {
+                    return new ClassHeader(0, type, "java/util/AbstractList", new String[] {"java/util/RandomAccess"});
+                }
+                throw new IOException("Unknown type " + type, cause);
+            }
+        });
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("no/such/Type", "java/util/LinkedList"));
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("no/such/Type", "java/util/Vector"));
+        assertTrue(hierarchy.isSubClass("no/such/Type", "java/util/List"));
+        assertTrue(hierarchy.isSubClass("no/such/Type", "java/util/RandomAccess"));
+        assertEquals(1, calls.get());
+        
+        try {
+            hierarchy.getCommonSuperClass("no/such/Other", "java/util/ArrayList");
+            fail("Missing type is resolved");
+        } catch (UnresolvedTypeException ex) {
+            assertEquals("Unknown type no/such/Other", ex.getCause().getMessage());
+            assertTrue(ex.getCause().getCause() instanceof IOException);
+        }
+        lookupMissing(hierarchy, "no/such/Other");
+        assertEquals(2, calls.get());
+    }
+    
+    private static UnresolvedTypeException lookupMissing(ClassHierarchy hierarchy) {
+        return lookupMissing(hierarchy, "no/such/Type");
+    }
+    
+    private static UnresolvedTypeException lookupMissing(ClassHierarchy hierarchy, String type) {
+        try {
+            hierarchy.getCommonSuperClass("java/util/ArrayList", type);
+        } catch (UnresolvedTypeException ex) {
+            return ex;
+        }
+        throw new AssertionError("Missing type is resolved");
+    }
+}